@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// 2-hop distance labels for SAP: the label of v lists every ancestor of v
+// (including v itself) with its distance from v, sorted by ancestor id
+// every ancestral path v -> x <- w meets at an ancestor x present in both
+// labels, so the shortest one is found by merging the two sorted lists; no hub
+// is pruned, which keeps the merge exact, and labels stay short on shallow
+// graphs such as WordNet's hypernym DAG
+// the label of v is vertices[offsets[v]] .. vertices[offsets[v + 1] - 1], with
+// the matching distances in dists
+class AncestorLabels {
+    private static final int BLOCK_SIZE = 1024;
+
+    final int[] offsets;
+    final int[] vertices;
+    final int[] dists;
+    final long build_nanos;
+
+    // labels of a block of consecutive vertices
+    private static class Block {
+        private int[] sizes = new int[BLOCK_SIZE];
+        private int[] vertices = new int[4 * BLOCK_SIZE];
+        private int[] dists = new int[4 * BLOCK_SIZE];
+        private int count;
+
+        // makes room for size more entries
+        private void reserve(int size) {
+            if (count + size > vertices.length) {
+                int capacity = Math.max(2 * vertices.length, count + size);
+                vertices = Arrays.copyOf(vertices, capacity);
+                dists = Arrays.copyOf(dists, capacity);
+            }
+        }
+    }
+
+    // one BFS per vertex over its ancestors, in parallel over blocks of
+    // vertices
+    AncestorLabels(int V, int[] graph_offsets, int[] graph_targets) {
+        this(null, null, V, graph_offsets, graph_targets);
+    }
+
+    // labels of a graph updated from the one old was built for, in which only
+    // the vertices marked in changed, and any vertices added past the end of
+    // changed, have different ancestors; the other labels are copied from old
+    AncestorLabels(AncestorLabels old, boolean[] changed, int V, int[] graph_offsets, int[] graph_targets) {
+        long start = System.nanoTime();
+        Block[] blocks = new Block[(V + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        ThreadLocal<int[][]> bfs = ThreadLocal.withInitial(() -> new int[3][V]);
+        IntStream.range(0, blocks.length).parallel().forEach(b -> {
+            int[][] scratch = bfs.get();
+            blocks[b] = label_block(b * BLOCK_SIZE, Math.min(V, (b + 1) * BLOCK_SIZE), graph_offsets,
+                                    graph_targets, old, changed, scratch[0], scratch[1], scratch[2]);
+        });
+        offsets = new int[V + 1];
+        int total = 0;
+        for (Block block : blocks) {
+            total += block.count;
+        }
+        vertices = new int[total];
+        dists = new int[total];
+        int e = 0;
+        for (int b = 0; b < blocks.length; ++b) {
+            System.arraycopy(blocks[b].vertices, 0, vertices, e, blocks[b].count);
+            System.arraycopy(blocks[b].dists, 0, dists, e, blocks[b].count);
+            for (int i = 0; i < BLOCK_SIZE && b * BLOCK_SIZE + i < V; ++i) {
+                offsets[b * BLOCK_SIZE + i] = e;
+                e += blocks[b].sizes[i];
+            }
+        }
+        offsets[V] = e;
+        build_nanos = System.nanoTime() - start;
+    }
+
+    private static Block label_block(int from, int to, int[] graph_offsets, int[] graph_targets,
+                                     AncestorLabels old, boolean[] changed, int[] mark, int[] dist,
+                                     int[] queue) {
+        Block block = new Block();
+        for (int v = from; v < to; ++v) {
+            if (old != null && v < changed.length && !changed[v]) {
+                int size = old.offsets[v + 1] - old.offsets[v];
+                block.reserve(size);
+                System.arraycopy(old.vertices, old.offsets[v], block.vertices, block.count, size);
+                System.arraycopy(old.dists, old.offsets[v], block.dists, block.count, size);
+                block.count += size;
+                block.sizes[v - from] = size;
+                continue;
+            }
+            // mark holds v + 1 for vertices reached from v, so it never needs
+            // clearing between vertices
+            int head = 0;
+            int tail = 0;
+            mark[v] = v + 1;
+            dist[v] = 0;
+            queue[tail++] = v;
+            while (head < tail) {
+                int n = queue[head++];
+                for (int e = graph_offsets[n]; e < graph_offsets[n + 1]; ++e) {
+                    int next = graph_targets[e];
+                    if (mark[next] != v + 1) {
+                        mark[next] = v + 1;
+                        dist[next] = dist[n] + 1;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            Arrays.sort(queue, 0, tail);
+            block.reserve(tail);
+            for (int i = 0; i < tail; ++i) {
+                block.vertices[block.count] = queue[i];
+                block.dists[block.count] = dist[queue[i]];
+                ++block.count;
+            }
+            block.sizes[v - from] = tail;
+        }
+        return block;
+    }
+
+    long bytes() {
+        return 4L * (offsets.length + vertices.length + dists.length);
+    }
+}
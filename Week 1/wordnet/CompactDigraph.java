@@ -0,0 +1,231 @@
+import java.util.Arrays;
+
+import edu.princeton.cs.algs4.Digraph;
+
+// immutable digraph in compressed sparse row form: the targets of the edges
+// leaving v are targets[offsets[v]] .. targets[offsets[v + 1] - 1]
+// two flat int arrays replace a Bag of boxed Integers per vertex, so one
+// instance can be built once and shared read-only by any number of SAPs and
+// threads
+public class CompactDigraph {
+    private final int[] offsets;
+    private final int[] targets;
+
+    // copy of an algs4 digraph, keeping each vertex's adjacency order
+    public CompactDigraph(Digraph G) {
+        if (G == null) {
+            throw new IllegalArgumentException();
+        }
+        offsets = new int[G.V() + 1];
+        targets = new int[G.E()];
+        int e = 0;
+        for (int v = 0; v < G.V(); ++v) {
+            offsets[v] = e;
+            for (int w : G.adj(v)) {
+                targets[e++] = w;
+            }
+        }
+        offsets[G.V()] = e;
+    }
+
+    // digraph on V vertices with the edges from[i] -> to[i] for i < E, kept in
+    // the given order within each vertex
+    public CompactDigraph(int V, int[] from, int[] to, int E) {
+        if (V < 0 || E < 0 || from.length < E || to.length < E) {
+            throw new IllegalArgumentException();
+        }
+        offsets = new int[V + 1];
+        targets = new int[E];
+        // counting sort of the edges by source vertex
+        for (int i = 0; i < E; ++i) {
+            validate_vertex(from[i], V);
+            validate_vertex(to[i], V);
+            ++offsets[from[i] + 1];
+        }
+        for (int v = 0; v < V; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = new int[V];
+        for (int i = 0; i < E; ++i) {
+            targets[offsets[from[i]] + next[from[i]]++] = to[i];
+        }
+    }
+
+    // wraps existing CSR arrays, e.g. loaded from a snapshot, without copying
+    // them; the arrays are checked but must not be modified afterwards
+    CompactDigraph(int[] offsets, int[] targets) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length) {
+            throw new IllegalArgumentException("malformed offsets");
+        }
+        for (int v = 1; v < offsets.length; ++v) {
+            if (offsets[v] < offsets[v - 1]) {
+                throw new IllegalArgumentException("malformed offsets");
+            }
+        }
+        for (int w : targets) {
+            validate_vertex(w, offsets.length - 1);
+        }
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    private static void validate_vertex(int v, int V) {
+        if (v < 0 || v >= V) {
+            throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V - 1));
+        }
+    }
+
+    public int V() {
+        return offsets.length - 1;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    public int outdegree(int v) {
+        validate_vertex(v, V());
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // copy with one more vertex, numbered V(), that has no edges
+    CompactDigraph with_vertex() {
+        int[] new_offsets = Arrays.copyOf(offsets, offsets.length + 1);
+        new_offsets[offsets.length] = targets.length;
+        return new CompactDigraph(new_offsets, targets);
+    }
+
+    // copy with the edge v -> w added after the existing edges of v
+    CompactDigraph with_edge(int v, int w) {
+        validate_vertex(v, V());
+        validate_vertex(w, V());
+        int[] new_offsets = new int[offsets.length];
+        int[] new_targets = new int[targets.length + 1];
+        int split = offsets[v + 1];
+        System.arraycopy(targets, 0, new_targets, 0, split);
+        new_targets[split] = w;
+        System.arraycopy(targets, split, new_targets, split + 1, targets.length - split);
+        for (int n = 0; n < offsets.length; ++n) {
+            new_offsets[n] = offsets[n] + (n > v ? 1 : 0);
+        }
+        return new CompactDigraph(new_offsets, new_targets);
+    }
+
+    // the digraph with every edge reversed; the sources of the edges into v
+    // come out in increasing order
+    public CompactDigraph reverse() {
+        int V = V();
+        int[] reverse_offsets = new int[V + 1];
+        for (int w : targets) {
+            ++reverse_offsets[w + 1];
+        }
+        for (int n = 0; n < V; ++n) {
+            reverse_offsets[n + 1] += reverse_offsets[n];
+        }
+        int[] sources = new int[targets.length];
+        int[] next = Arrays.copyOf(reverse_offsets, V);
+        for (int n = 0; n < V; ++n) {
+            for (int e = offsets[n]; e < offsets[n + 1]; ++e) {
+                sources[next[targets[e]]++] = n;
+            }
+        }
+        return new CompactDigraph(reverse_offsets, sources);
+    }
+
+    // every vertex in BFS order down the hyponyms from the roots (vertices
+    // without hypernyms), followed by the vertices no root reaches (those on
+    // or below a cycle with no way out) in id order
+    int[] top_down_order() {
+        int V = V();
+        CompactDigraph reverse = reverse();
+        boolean[] marked = new boolean[V];
+        int[] queue = new int[V];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < V; ++v) {
+            if (offsets[v] == offsets[v + 1]) {
+                marked[v] = true;
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int n = queue[head++];
+            for (int e = reverse.offsets[n]; e < reverse.offsets[n + 1]; ++e) {
+                if (!marked[reverse.targets[e]]) {
+                    marked[reverse.targets[e]] = true;
+                    queue[tail++] = reverse.targets[e];
+                }
+            }
+        }
+        for (int v = 0; v < V && tail < V; ++v) {
+            if (!marked[v]) {
+                queue[tail++] = v;
+            }
+        }
+        return queue;
+    }
+
+    // copy with every vertex v renamed to rank[v], keeping each vertex's edge
+    // order; rank must be a permutation of 0 .. V - 1
+    CompactDigraph renumbered(int[] rank) {
+        int V = V();
+        if (rank.length != V) {
+            throw new IllegalArgumentException("rank must hold one id per vertex");
+        }
+        int[] order = new int[V];
+        Arrays.fill(order, -1);
+        for (int v = 0; v < V; ++v) {
+            validate_vertex(rank[v], V);
+            if (order[rank[v]] != -1) {
+                throw new IllegalArgumentException("rank is not a permutation");
+            }
+            order[rank[v]] = v;
+        }
+        int[] new_offsets = new int[V + 1];
+        int[] new_targets = new int[targets.length];
+        int e = 0;
+        for (int n = 0; n < V; ++n) {
+            new_offsets[n] = e;
+            int v = order[n];
+            for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+                new_targets[e++] = rank[targets[i]];
+            }
+        }
+        new_offsets[V] = e;
+        return new CompactDigraph(new_offsets, new_targets);
+    }
+
+    // v and every vertex with a path to v (its descendants, i.e. hyponyms in
+    // a hypernym graph), sorted
+    int[] descendants(int v) {
+        validate_vertex(v, V());
+        CompactDigraph reverse = reverse();
+        boolean[] marked = new boolean[V()];
+        int[] queue = new int[V()];
+        int head = 0;
+        int tail = 0;
+        marked[v] = true;
+        queue[tail++] = v;
+        while (head < tail) {
+            int n = queue[head++];
+            for (int e = reverse.offsets[n]; e < reverse.offsets[n + 1]; ++e) {
+                if (!marked[reverse.targets[e]]) {
+                    marked[reverse.targets[e]] = true;
+                    queue[tail++] = reverse.targets[e];
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(queue, tail);
+        Arrays.sort(result);
+        return result;
+    }
+
+    // the arrays themselves, for traversal loops; callers must not modify them
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+}
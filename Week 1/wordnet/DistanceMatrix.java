@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// all-pairs SAP distances between a list of nouns, as a symmetric matrix that
+// stores only the entries above the diagonal, row by row: entry (i, j) with
+// i < j is at i * n - i * (i + 1) / 2 + (j - i - 1)
+// each noun's ancestors are walked once into a profile, in parallel, and each
+// row of the matrix is then filled in parallel by merging profiles
+// entries are shorts whenever no distance can exceed Short.MAX_VALUE (always
+// for WordNet) and ints otherwise; -1 means no common ancestor
+// the entries live in segments of at most 2^28, either on the heap or mapped
+// from a file, so a 20k x 20k matrix never has to fit on the heap
+// file layout (big-endian ints): magic, n, bytes per entry, then the entries
+public class DistanceMatrix {
+    private static final int MAGIC = 0x574e4d31; // "WNM1"
+    private static final int HEADER_BYTES = 12;
+    private static final int SEGMENT_SHIFT = 28;
+    private static final long SEGMENT_ENTRIES = 1L << SEGMENT_SHIFT;
+
+    private final int n;
+    private final int width; // bytes per entry, 2 or 4
+    private final ByteBuffer[] segments;
+
+    private DistanceMatrix(int n, int width, ByteBuffer[] segments) {
+        this.n = n;
+        this.width = width;
+        this.segments = segments;
+    }
+
+    // computes the matrix on the heap
+    public static DistanceMatrix compute(WordNet wordnet, List<String> nouns) {
+        SAP.Profile[] profiles = profiles(wordnet, nouns);
+        int n = profiles.length;
+        int width = width(profiles);
+        long entries = entries(n);
+        ByteBuffer[] segments = new ByteBuffer[num_of_segments(entries)];
+        for (int s = 0; s < segments.length; ++s) {
+            segments[s] = ByteBuffer.allocate((int) (segment_size(entries, s) * width));
+        }
+        DistanceMatrix matrix = new DistanceMatrix(n, width, segments);
+        matrix.fill(profiles);
+        return matrix;
+    }
+
+    // computes the matrix straight into a memory-mapped file, which open()
+    // maps back; only the profiles are kept on the heap
+    public static DistanceMatrix write(WordNet wordnet, List<String> nouns, Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        SAP.Profile[] profiles = profiles(wordnet, nouns);
+        int n = profiles.length;
+        int width = width(profiles);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(n).putInt(width);
+            header.force();
+            DistanceMatrix matrix = new DistanceMatrix(n, width, map(channel, FileChannel.MapMode.READ_WRITE,
+                                                                     entries(n), width));
+            matrix.fill(profiles);
+            for (ByteBuffer segment : matrix.segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            return matrix;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not write " + path, e);
+        }
+    }
+
+    // maps a matrix written by write(); entries are read from the page cache
+    // on demand
+    public static DistanceMatrix open(Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            int magic = header.getInt();
+            int n = header.getInt();
+            int width = header.getInt();
+            if (magic != MAGIC || n < 0 || (width != 2 && width != 4)
+                    || channel.size() != HEADER_BYTES + entries(n) * width) {
+                throw new IllegalArgumentException(path + " is not a distance matrix");
+            }
+            return new DistanceMatrix(n, width, map(channel, FileChannel.MapMode.READ_ONLY, entries(n), width));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + path, e);
+        }
+    }
+
+    private static SAP.Profile[] profiles(WordNet wordnet, List<String> nouns) {
+        if (wordnet == null || nouns == null) {
+            throw new IllegalArgumentException();
+        }
+        return wordnet.profiles(nouns);
+    }
+
+    // 2 if every distance fits in a short, else 4
+    private static int width(SAP.Profile[] profiles) {
+        int max_height = 0;
+        for (SAP.Profile profile : profiles) {
+            max_height = Math.max(max_height, profile.height());
+        }
+        return 2L * max_height <= Short.MAX_VALUE ? 2 : 4;
+    }
+
+    private static long entries(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    private static int num_of_segments(long entries) {
+        return (int) ((entries + SEGMENT_ENTRIES - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static long segment_size(long entries, int s) {
+        return Math.min(SEGMENT_ENTRIES, entries - s * SEGMENT_ENTRIES);
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long entries, int width)
+            throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[num_of_segments(entries)];
+        for (int s = 0; s < segments.length; ++s) {
+            segments[s] = channel.map(mode, HEADER_BYTES + s * SEGMENT_ENTRIES * width,
+                                      segment_size(entries, s) * width);
+        }
+        return segments;
+    }
+
+    // fills every row in parallel; rows are independent and written with
+    // absolute puts, so no locking is needed
+    private void fill(SAP.Profile[] profiles) {
+        IntStream.range(0, n).parallel().forEach(i -> {
+            long p = index(i, i + 1);
+            for (int j = i + 1; j < n; ++j) {
+                put(p++, SAP.length(profiles[i], profiles[j]));
+            }
+        });
+    }
+
+    private long index(int i, int j) {
+        return (long) i * n - (long) i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    private void put(long p, int value) {
+        ByteBuffer segment = segments[(int) (p >>> SEGMENT_SHIFT)];
+        int offset = (int) (p & (SEGMENT_ENTRIES - 1)) * width;
+        if (width == 2) {
+            segment.putShort(offset, (short) value);
+        } else {
+            segment.putInt(offset, value);
+        }
+    }
+
+    private int get(long p) {
+        ByteBuffer segment = segments[(int) (p >>> SEGMENT_SHIFT)];
+        int offset = (int) (p & (SEGMENT_ENTRIES - 1)) * width;
+        return width == 2 ? segment.getShort(offset) : segment.getInt(offset);
+    }
+
+    // number of nouns
+    public int size() {
+        return n;
+    }
+
+    // bytes per stored entry, 2 or 4
+    public int width() {
+        return width;
+    }
+
+    // distance between the i-th and j-th nouns of the list the matrix was
+    // computed for
+    public int distance(int i, int j) {
+        if (i < 0 || i >= n || j < 0 || j >= n) {
+            throw new IllegalArgumentException("index outside its prescribed range");
+        }
+        if (i == j) {
+            return 0;
+        }
+        return i < j ? get(index(i, j)) : get(index(j, i));
+    }
+
+    // do unit testing of this class: a matrix over the first n nouns, on the
+    // heap or written to the file given as the fourth argument, spot-checked
+    // against WordNet.distance
+    public static void main(String[] args) {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        int n = Integer.parseInt(args[2]);
+        List<String> nouns = new ArrayList<String>();
+        for (String noun : wordnet.nouns()) {
+            if (nouns.size() == n) {
+                break;
+            }
+            nouns.add(noun);
+        }
+        long start = System.nanoTime();
+        DistanceMatrix matrix = args.length > 3 ? write(wordnet, nouns, Path.of(args[3]))
+                                                : compute(wordnet, nouns);
+        long elapsed = System.nanoTime() - start;
+        StdOut.printf("%d x %d matrix, %d bytes per entry, %.1f ms (%.0f pairs/s)\n", matrix.size(),
+                      matrix.size(), matrix.width(), elapsed / 1e6, entries(matrix.size()) / (elapsed / 1e9));
+        // a written matrix is checked as mapped back from its file
+        DistanceMatrix check = args.length > 3 ? open(Path.of(args[3])) : matrix;
+        int[] checks = new int[Math.min(check.size(), 100)];
+        Arrays.setAll(checks, k -> k * (check.size() / checks.length));
+        for (int i : checks) {
+            for (int j : checks) {
+                if (check.distance(i, j) != wordnet.distance(nouns.get(i), nouns.get(j))) {
+                    throw new IllegalStateException("distance mismatch at " + i + ", " + j);
+                }
+            }
+        }
+        StdOut.println("spot checks passed");
+    }
+}
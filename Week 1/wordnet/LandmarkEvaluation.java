@@ -0,0 +1,81 @@
+import java.util.Random;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// accuracy and speed of SAP.approximateLength against the exact SAP.length on
+// random vertex pairs of a hypernyms file, e.g. hypernyms.txt
+// usage: java LandmarkEvaluation hypernyms.txt [landmarks] [pairs]
+public class LandmarkEvaluation {
+    private static final int MAX_REPORTED_ERROR = 8;
+
+    public static void main(String[] args) {
+        CompactDigraph graph = WordNetLoader.read_hypernyms(args[0]);
+        int num_of_landmarks = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int num_of_pairs = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        SAP sap = new SAP(graph, new SapOptions().landmarks(num_of_landmarks));
+        StdOut.println(graph.V() + " vertices, " + graph.E() + " edges, " + sap.landmarkStats());
+        Random random = new Random(42);
+        int[] v = new int[num_of_pairs];
+        int[] w = new int[num_of_pairs];
+        for (int i = 0; i < num_of_pairs; ++i) {
+            v[i] = random.nextInt(graph.V());
+            w[i] = random.nextInt(graph.V());
+        }
+        // twice each, timing the second pass once the JIT has warmed up
+        int[] exact = new int[num_of_pairs];
+        int[] approximate = new int[num_of_pairs];
+        long exact_nanos = 0;
+        long approximate_nanos = 0;
+        for (int pass = 0; pass < 2; ++pass) {
+            long start = System.nanoTime();
+            for (int i = 0; i < num_of_pairs; ++i) {
+                exact[i] = sap.length(v[i], w[i]);
+            }
+            exact_nanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < num_of_pairs; ++i) {
+                approximate[i] = sap.approximateLength(v[i], w[i]);
+            }
+            approximate_nanos = System.nanoTime() - start;
+        }
+        // error = approximate - exact, which is never negative
+        long[] errors = new long[MAX_REPORTED_ERROR + 1];
+        int connected = 0;
+        int missed = 0; // pairs with a path but no common landmark
+        long total_error = 0;
+        double total_relative_error = 0;
+        int max_error = 0;
+        for (int i = 0; i < num_of_pairs; ++i) {
+            if (exact[i] == -1) {
+                if (approximate[i] != -1) {
+                    throw new IllegalStateException("estimate for disconnected pair " + v[i] + ", " + w[i]);
+                }
+                continue;
+            }
+            ++connected;
+            if (approximate[i] == -1) {
+                ++missed;
+                continue;
+            }
+            int error = approximate[i] - exact[i];
+            if (error < 0) {
+                throw new IllegalStateException("estimate below exact length for " + v[i] + ", " + w[i]);
+            }
+            ++errors[Math.min(error, MAX_REPORTED_ERROR)];
+            total_error += error;
+            total_relative_error += exact[i] == 0 ? 0 : (double) error / exact[i];
+            max_error = Math.max(max_error, error);
+        }
+        int estimated = connected - missed;
+        StdOut.printf("%d pairs, %d connected, %d without a common landmark\n", num_of_pairs, connected, missed);
+        StdOut.printf("mean error %.3f, mean relative error %.2f%%, max error %d\n",
+                      (double) total_error / Math.max(1, estimated),
+                      100 * total_relative_error / Math.max(1, estimated), max_error);
+        for (int e = 0; e <= MAX_REPORTED_ERROR; ++e) {
+            StdOut.printf("error %s%d: %6.2f%%\n", e == MAX_REPORTED_ERROR ? ">=" : "", e,
+                          100.0 * errors[e] / Math.max(1, estimated));
+        }
+        StdOut.printf("exact %.1f ns/query, approximate %.1f ns/query\n", (double) exact_nanos / num_of_pairs,
+                      (double) approximate_nanos / num_of_pairs);
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// approximate SAP distances from a few hundred landmark vertices near the roots
+// every vertex stores its distance up to each landmark (or UNREACHABLE if the
+// landmark is not an ancestor), and the distance between v and w is estimated
+// as the shortest path through a common landmark:
+//   min over landmarks l of dist(v, l) + dist(w, l)
+// that path is a real ancestral path, so the estimate is never below the exact
+// length, and it is exact whenever a shortest ancestral path meets at a
+// landmark; vertices without a common landmark are estimated as -1
+// landmarks are the first vertices of CompactDigraph.top_down_order, a BFS down
+// the hyponyms from the roots (vertices without hypernyms), so every root is a
+// landmark when there are no more roots than landmarks
+// the distances of vertex v are dist[v * count .. (v + 1) * count - 1], one
+// unsigned byte each, so an estimate is one linear pass over two short rows
+class Landmarks {
+    // distances of MAX_DIST or more count as unreachable, so the sum of two
+    // real distances always stays below UNREACHABLE
+    private static final int UNREACHABLE = 0xff;
+    private static final int MAX_DIST = 0x80;
+
+    final int max_count; // landmarks asked for; fewer are picked on small graphs
+    final int count;
+    final int[] landmarks;
+    private final byte[] dist;
+    final long build_nanos;
+
+    Landmarks(int V, int[] graph_offsets, int[] graph_targets, int max_count) {
+        if (max_count <= 0) {
+            throw new IllegalArgumentException("need at least one landmark");
+        }
+        long start = System.nanoTime();
+        this.max_count = max_count;
+        CompactDigraph graph = new CompactDigraph(graph_offsets, graph_targets);
+        CompactDigraph reverse = graph.reverse();
+        landmarks = Arrays.copyOf(graph.top_down_order(), Math.min(V, max_count));
+        count = landmarks.length;
+        if ((long) V * count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many landmarks for " + V + " vertices");
+        }
+        int[] down_offsets = reverse.offsets();
+        int[] down_targets = reverse.targets();
+        // one BFS down the hyponyms from each landmark, in parallel, each into
+        // its own column so that threads never share a cache line; the
+        // columns are then interleaved into rows
+        byte[][] columns = new byte[count][];
+        ThreadLocal<int[]> queues = ThreadLocal.withInitial(() -> new int[V]);
+        IntStream.range(0, count).parallel().forEach(l -> {
+            byte[] column = new byte[V];
+            Arrays.fill(column, (byte) UNREACHABLE);
+            int[] queue = queues.get();
+            int head = 0;
+            int tail = 0;
+            column[landmarks[l]] = 0;
+            queue[tail++] = landmarks[l];
+            while (head < tail) {
+                int n = queue[head++];
+                int d = column[n] & 0xff;
+                if (d + 1 >= MAX_DIST) {
+                    continue;
+                }
+                for (int e = down_offsets[n]; e < down_offsets[n + 1]; ++e) {
+                    int next = down_targets[e];
+                    if ((column[next] & 0xff) == UNREACHABLE) {
+                        column[next] = (byte) (d + 1);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            columns[l] = column;
+        });
+        dist = new byte[V * count];
+        for (int v = 0; v < V; ++v) {
+            for (int l = 0; l < count; ++l) {
+                dist[v * count + l] = columns[l][v];
+            }
+        }
+        build_nanos = System.nanoTime() - start;
+    }
+
+    // estimated length between v and w; -1 if they have no common landmark
+    int estimate(int v, int w) {
+        int best = Integer.MAX_VALUE;
+        int v_row = v * count;
+        int w_row = w * count;
+        for (int l = 0; l < count; ++l) {
+            best = Math.min(best, (dist[v_row + l] & 0xff) + (dist[w_row + l] & 0xff));
+        }
+        return best >= UNREACHABLE ? -1 : best;
+    }
+
+    // estimated length between the closest members of two sets
+    int estimate(int[] v, int[] w) {
+        int best = Integer.MAX_VALUE;
+        for (int l = 0; l < count; ++l) {
+            int v_dist = UNREACHABLE;
+            for (int n : v) {
+                v_dist = Math.min(v_dist, dist[n * count + l] & 0xff);
+            }
+            int w_dist = UNREACHABLE;
+            for (int n : w) {
+                w_dist = Math.min(w_dist, dist[n * count + l] & 0xff);
+            }
+            best = Math.min(best, v_dist + w_dist);
+        }
+        return best >= UNREACHABLE ? -1 : best;
+    }
+
+    long bytes() {
+        return dist.length + 4L * landmarks.length;
+    }
+}
@@ -0,0 +1,168 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// immutable dictionary from nouns to their synset ids, stored as four flat
+// arrays instead of a HashMap of Strings to ArrayLists of boxed Integers:
+//   noun_bytes      UTF-8 bytes of every noun, in sorted order, concatenated
+//   noun_offsets    noun i is noun_bytes[noun_offsets[i] .. noun_offsets[i + 1])
+//   posting_offsets synsets of noun i are postings[posting_offsets[i] .. posting_offsets[i + 1])
+//   postings        synset ids of all nouns, concatenated
+// lookups binary search the sorted nouns, comparing UTF-8 bytes, in O(log n)
+class NounIndex implements Iterable<String> {
+    private final byte[] noun_bytes;
+    private final int[] noun_offsets;
+    private final int[] posting_offsets;
+    private final int[] postings;
+
+    // wraps existing arrays, e.g. loaded from a snapshot, without copying them;
+    // the arrays must not be modified afterwards
+    NounIndex(byte[] noun_bytes, int[] noun_offsets, int[] posting_offsets, int[] postings) {
+        if (noun_offsets.length != posting_offsets.length
+                || noun_offsets[noun_offsets.length - 1] != noun_bytes.length
+                || posting_offsets[posting_offsets.length - 1] != postings.length) {
+            throw new IllegalArgumentException("malformed noun index");
+        }
+        this.noun_bytes = noun_bytes;
+        this.noun_offsets = noun_offsets;
+        this.posting_offsets = posting_offsets;
+        this.postings = postings;
+    }
+
+    // compacts a noun -> synset ids map, keeping each noun's id order
+    static NounIndex build(Map<String, ArrayList<Integer>> words) {
+        int n = words.size();
+        byte[][] encoded = new byte[n][];
+        int i = 0;
+        for (String noun : words.keySet()) {
+            encoded[i++] = noun.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(encoded, NounIndex::compare_bytes);
+        int[] noun_offsets = new int[n + 1];
+        int[] posting_offsets = new int[n + 1];
+        for (i = 0; i < n; ++i) {
+            noun_offsets[i + 1] = noun_offsets[i] + encoded[i].length;
+        }
+        byte[] noun_bytes = new byte[noun_offsets[n]];
+        ArrayList<ArrayList<Integer>> lists = new ArrayList<ArrayList<Integer>>(n);
+        for (i = 0; i < n; ++i) {
+            System.arraycopy(encoded[i], 0, noun_bytes, noun_offsets[i], encoded[i].length);
+            ArrayList<Integer> ids = words.get(new String(encoded[i], StandardCharsets.UTF_8));
+            lists.add(ids);
+            posting_offsets[i + 1] = posting_offsets[i] + ids.size();
+        }
+        int[] postings = new int[posting_offsets[n]];
+        for (i = 0; i < n; ++i) {
+            int p = posting_offsets[i];
+            for (int id : lists.get(i)) {
+                postings[p++] = id;
+            }
+        }
+        return new NounIndex(noun_bytes, noun_offsets, posting_offsets, postings);
+    }
+
+    // copy of this index in which each of the nouns also belongs to synset id
+    NounIndex with(String[] nouns, int id) {
+        HashMap<String, ArrayList<Integer>> words = new HashMap<String, ArrayList<Integer>>();
+        for (int i = 0; i < size(); ++i) {
+            ArrayList<Integer> ids = new ArrayList<Integer>();
+            for (int p = posting_offsets[i]; p < posting_offsets[i + 1]; ++p) {
+                ids.add(postings[p]);
+            }
+            words.put(noun(i), ids);
+        }
+        for (String noun : nouns) {
+            words.computeIfAbsent(noun, k -> new ArrayList<Integer>()).add(id);
+        }
+        return build(words);
+    }
+
+    // unsigned lexicographic order of UTF-8 bytes, which is code point order
+    private static int compare_bytes(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    private static int compare(byte[] a, int a_from, int a_to, byte[] b, int b_from, int b_to) {
+        int i = a_from;
+        int j = b_from;
+        while (i < a_to && j < b_to) {
+            int diff = (a[i++] & 0xff) - (b[j++] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (a_to - i) - (b_to - j);
+    }
+
+    public int size() {
+        return noun_offsets.length - 1;
+    }
+
+    // position of the noun in sorted order; -1 if it is not in the index
+    public int find(String noun) {
+        byte[] key = noun.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(noun_bytes, noun_offsets[mid], noun_offsets[mid + 1], key, 0, key.length);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String noun(int i) {
+        return new String(noun_bytes, noun_offsets[i], noun_offsets[i + 1] - noun_offsets[i],
+                          StandardCharsets.UTF_8);
+    }
+
+    // synset ids of the i-th noun, as a fresh array
+    public int[] synsets(int i) {
+        return Arrays.copyOfRange(postings, posting_offsets[i], posting_offsets[i + 1]);
+    }
+
+    // nouns in sorted order, each decoded as it is reached
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return noun(next++);
+            }
+        };
+    }
+
+    // the arrays themselves, for snapshots; callers must not modify them
+    byte[] noun_bytes() {
+        return noun_bytes;
+    }
+
+    int[] noun_offsets() {
+        return noun_offsets;
+    }
+
+    int[] posting_offsets() {
+        return posting_offsets;
+    }
+
+    int[] postings() {
+        return postings;
+    }
+}
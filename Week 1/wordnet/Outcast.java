@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
 
@@ -22,18 +24,24 @@ public class Outcast {
     }
 
     // given an array of WordNet nouns, return an outcast
+    // each noun's ancestors are walked once into a sorted ancestor->distance
+    // profile, and every unordered pair's distance is one merge of two profiles
+    // counted for both nouns, instead of n^2 distance() calls
+    // all profiles are taken from one WordNet version, so a concurrent update
+    // cannot mix two id spaces
     public String outcast(String[] nouns) {
         if (nouns == null || nouns.length == 0) {
             throw new IllegalArgumentException("Null/Empty arguments");
         }
         int total_nouns = nouns.length;
+        SAP.Profile[] profiles = wordnet.profiles(Arrays.asList(nouns));
         int[] distances = new int[total_nouns];
         for (int i = 0; i < total_nouns; ++i) {
-            int total_dist = 0;
-            for (int j = 0; j < total_nouns; ++j) {
-                total_dist += wordnet.distance(nouns[i], nouns[j]);
+            for (int j = i + 1; j < total_nouns; ++j) {
+                int dist = SAP.length(profiles[i], profiles[j]);
+                distances[i] += dist;
+                distances[j] += dist;
             }
-            distances[i] = total_dist;
         }
         return nouns[getMaxIndex(distances)];
     }
@@ -0,0 +1,120 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+// runs Outcast over many files at once against one shared WordNet
+// files are read and solved concurrently on a fixed pool of threads, each of
+// which searches with its own SAP scratch; at most WINDOW_PER_THREAD files per
+// thread are in flight, and results are printed in input order as soon as
+// every earlier file is done, so output streams with bounded memory and reads
+// exactly like Outcast.main's
+// a file that cannot be read or holds a non-noun prints "file: error <message>"
+// instead of stopping the batch
+// usage: java OutcastBatch synsets hypernyms [--threads=N] [outcast files...]
+// with no files on the command line, file names are read from standard input,
+// one per line; throughput is reported on standard error at the end
+public class OutcastBatch {
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private final Outcast outcast;
+    private final int threads;
+
+    public OutcastBatch(WordNet wordnet, int threads) {
+        if (wordnet == null || threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.outcast = new Outcast(wordnet);
+        this.threads = threads;
+    }
+
+    // prints one result line per file, in the order given; returns the number
+    // of files processed
+    public int run(Iterable<String> files) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> in_flight = new ArrayDeque<Future<String>>();
+        int count = 0;
+        try {
+            for (String file : files) {
+                if (in_flight.size() == threads * WINDOW_PER_THREAD) {
+                    StdOut.println(result(in_flight.poll()));
+                }
+                in_flight.add(pool.submit(() -> answer(file)));
+                ++count;
+            }
+            while (!in_flight.isEmpty()) {
+                StdOut.println(result(in_flight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    // the output line for one file
+    private String answer(String file) {
+        try {
+            String[] nouns = new In(file).readAllStrings();
+            return file + ": " + outcast.outcast(nouns);
+        } catch (IllegalArgumentException e) {
+            return file + ": error " + e.getMessage();
+        }
+    }
+
+    private static String result(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ArrayList<String> read_file_names() {
+        ArrayList<String> files = new ArrayList<String>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    files.add(line.trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read file names", e);
+        }
+        return files;
+    }
+
+    public static void main(String[] args) {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 2;
+        if (args.length > first && args[first].startsWith("--threads=")) {
+            threads = Integer.parseInt(args[first].substring("--threads=".length()));
+            ++first;
+        }
+        ArrayList<String> files = new ArrayList<String>();
+        for (int t = first; t < args.length; ++t) {
+            files.add(args[t]);
+        }
+        if (files.isEmpty()) {
+            files = read_file_names();
+        }
+        long start = System.nanoTime();
+        int count = new OutcastBatch(wordnet, threads).run(files);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d files in %.2f s on %d threads (%.1f files/s)\n", count, seconds, threads,
+                          count / seconds);
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+// precomputed facts that prove two vertices have no common ancestor without a
+// traversal
+// - weakly connected component ids: vertices in different components share no
+//   ancestor
+// - ancestor-set bitmaps over the top level of the graph, i.e. its sink strong
+//   components (the roots of a hypernym DAG): bit r of a vertex is set iff it
+//   reaches top-level component r; every vertex reaches at least one of them,
+//   and so does every common ancestor, so vertices whose bitmaps do not
+//   intersect share no ancestor
+// the same test prunes a search: a vertex whose bitmap misses every top-level
+// component of the other side cannot lead to a common ancestor
+// bitmaps are kept per strong component and skipped when there is only one
+// top-level component (they would never reject anything) or more than
+// 64 * MAX_WORDS of them (they would cost too much memory)
+class Reachability {
+    private static final int MAX_WORDS = 4;
+
+    private final int[] component; // weakly connected component of each vertex
+    private final int[] strong;    // strong component of each vertex
+    private final long[] bits;     // words bits per strong component; null if unused
+    private final int words;
+
+    Reachability(int V, int[] offsets, int[] targets) {
+        component = weak_components(V, offsets, targets);
+        strong = new int[V];
+        int num_of_strong = strong_components(V, offsets, targets, strong);
+        // a strong component is top level if no edge leaves it; Tarjan numbers
+        // components in reverse topological order, so every component reached
+        // from C has a smaller number than C
+        boolean[] top = new boolean[num_of_strong];
+        Arrays.fill(top, true);
+        for (int v = 0; v < V; ++v) {
+            for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                if (strong[targets[e]] != strong[v]) {
+                    top[strong[v]] = false;
+                }
+            }
+        }
+        int num_of_top = 0;
+        int[] top_bit = new int[num_of_strong];
+        for (int c = 0; c < num_of_strong; ++c) {
+            top_bit[c] = top[c] ? num_of_top++ : -1;
+        }
+        if (num_of_top <= 1 || num_of_top > 64 * MAX_WORDS) {
+            words = 0;
+            bits = null;
+            return;
+        }
+        words = (num_of_top + 63) / 64;
+        bits = new long[num_of_strong * words];
+        // members of each strong component, to visit components in order
+        int[] start = new int[num_of_strong + 1];
+        for (int v = 0; v < V; ++v) {
+            ++start[strong[v] + 1];
+        }
+        for (int c = 0; c < num_of_strong; ++c) {
+            start[c + 1] += start[c];
+        }
+        int[] members = new int[V];
+        int[] fill = Arrays.copyOf(start, num_of_strong);
+        for (int v = 0; v < V; ++v) {
+            members[fill[strong[v]]++] = v;
+        }
+        for (int c = 0; c < num_of_strong; ++c) {
+            if (top[c]) {
+                bits[c * words + top_bit[c] / 64] |= 1L << (top_bit[c] % 64);
+            }
+            for (int i = start[c]; i < start[c + 1]; ++i) {
+                int v = members[i];
+                for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                    int d = strong[targets[e]];
+                    for (int k = 0; k < words; ++k) {
+                        bits[c * words + k] |= bits[d * words + k];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] weak_components(int V, int[] offsets, int[] targets) {
+        int[] parent = new int[V];
+        for (int v = 0; v < V; ++v) {
+            parent[v] = v;
+        }
+        for (int v = 0; v < V; ++v) {
+            for (int e = offsets[v]; e < offsets[v + 1]; ++e) {
+                int a = find(parent, v);
+                int b = find(parent, targets[e]);
+                if (a != b) {
+                    parent[a] = b;
+                }
+            }
+        }
+        for (int v = 0; v < V; ++v) {
+            parent[v] = find(parent, v);
+        }
+        return parent;
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    // iterative Tarjan; fills strong[] and returns the number of components,
+    // numbered in reverse topological order
+    private static int strong_components(int V, int[] offsets, int[] targets, int[] strong) {
+        int[] index = new int[V];
+        int[] low = new int[V];
+        Arrays.fill(index, -1);
+        int[] stack = new int[V];
+        boolean[] on_stack = new boolean[V];
+        int[] call_stack = new int[V];
+        int[] next_edge = new int[V];
+        int stack_size = 0;
+        int counter = 0;
+        int num_of_strong = 0;
+        for (int root = 0; root < V; ++root) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            call_stack[depth++] = root;
+            index[root] = low[root] = counter++;
+            next_edge[root] = offsets[root];
+            stack[stack_size++] = root;
+            on_stack[root] = true;
+            while (depth > 0) {
+                int v = call_stack[depth - 1];
+                if (next_edge[v] < offsets[v + 1]) {
+                    int w = targets[next_edge[v]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        next_edge[w] = offsets[w];
+                        stack[stack_size++] = w;
+                        on_stack[w] = true;
+                        call_stack[depth++] = w;
+                    } else if (on_stack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stack_size];
+                        on_stack[w] = false;
+                        strong[w] = num_of_strong;
+                    } while (w != v);
+                    ++num_of_strong;
+                }
+                --depth;
+                if (depth > 0) {
+                    int parent = call_stack[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return num_of_strong;
+    }
+
+    // number of longs in a bitmap; 0 when bitmaps are not used
+    int words() {
+        return words;
+    }
+
+    // ORs the bitmap of v into mask
+    void add(int v, long[] mask) {
+        int base = strong[v] * words;
+        for (int k = 0; k < words; ++k) {
+            mask[k] |= bits[base + k];
+        }
+    }
+
+    // whether the bitmap of v shares a top-level component with mask
+    boolean intersects(int v, long[] mask) {
+        int base = strong[v] * words;
+        for (int k = 0; k < words; ++k) {
+            if ((bits[base + k] & mask[k]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // true if no vertex of v can share an ancestor with any vertex of w
+    boolean disjoint(int v, int w) {
+        if (component[v] != component[w]) {
+            return true;
+        }
+        if (words == 0) {
+            return false;
+        }
+        int a = strong[v] * words;
+        int b = strong[w] * words;
+        for (int k = 0; k < words; ++k) {
+            if ((bits[a + k] & bits[b + k]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean disjoint(int[] v, int[] w) {
+        for (int a : v) {
+            for (int b : w) {
+                if (!disjoint(a, b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -1,124 +1,947 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import edu.princeton.cs.algs4.BreadthFirstDirectedPaths;
 import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
 
+// thread safety: the graph, cache reference and precomputed indexes are fixed at construction and
+// every thread searches with its own scratch state, so one SAP may be shared by
+// any number of concurrent query threads
 public class SAP {
-    private Digraph graph;
+    private final int num_of_vertices;
+    // hypernyms of v are targets[offsets[v]] .. targets[offsets[v + 1] - 1],
+    // shared read-only with the CompactDigraph
+    // when renumbering is enabled these are the arrays of a renumbered copy:
+    // vertex v of the caller's graph is rank[v] here and vertex n here is
+    // order[n] there; every index below (scratch, labels, reachability,
+    // landmarks) uses the internal ids, while the cache and the public API use
+    // the caller's
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] rank; // null when renumbering is disabled
+    private final int[] order;
+    private final ThreadLocal<SearchScratch> scratch;
+    private final SapCache cache; // null when caching is disabled
+    private final AncestorLabels labels; // null when labels are disabled
+    private final Reachability reach;
+    private final SapStats stats; // null when instrumentation is disabled
+    private final Landmarks landmarks; // null when approximation is disabled
+    private volatile CompactDigraph hyponyms; // reverse graph, built on first use
+
+    // receives the vertices of a nearest() search; returns false to stop it
+    interface Visitor {
+        boolean visit(int v, int distance);
+    }
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
+        this(G, 0);
+    }
+
+    // as above, with results of up to cacheCapacity distinct queries kept in an
+    // LRU cache; a capacity of 0 disables the cache
+    public SAP(Digraph G, int cacheCapacity) {
+        this(compact(G), cacheCapacity);
+    }
+
+    // shares G without copying it; G is immutable, so no defensive copy is
+    // needed
+    public SAP(CompactDigraph G) {
+        this(G, 0);
+    }
+
+    public SAP(CompactDigraph G, int cacheCapacity) {
+        this(G, new SapOptions().cacheCapacity(cacheCapacity));
+    }
+
+    // shares G, with the optional features selected in options
+    public SAP(CompactDigraph G, SapOptions options) {
+        if (G == null || options == null) {
+            throw new IllegalArgumentException();
+        }
+        num_of_vertices = G.V();
+        rank = options.renumber() ? top_down_rank(G) : null;
+        order = invert(rank);
+        CompactDigraph internal = rank == null ? G : G.renumbered(rank);
+        offsets = internal.offsets();
+        targets = internal.targets();
+        cache = options.cacheCapacity() > 0 ? new SapCache(options.cacheCapacity()) : null;
+        labels = options.labels() ? new AncestorLabels(num_of_vertices, offsets, targets) : null;
+        reach = new Reachability(num_of_vertices, offsets, targets);
+        scratch = new_scratch(num_of_vertices, offsets, targets, reach);
+        stats = options.instrument() ? new SapStats() : null;
+        landmarks = options.landmarks() > 0
+            ? new Landmarks(num_of_vertices, offsets, targets, options.landmarks()) : null;
+    }
+
+    // shares internal, a graph renumbered by rank (or the caller's graph if rank
+    // is null), with the given cache, labels, stats and landmarks, which were
+    // carried over from the SAP of an earlier version of the graph
+    private SAP(CompactDigraph internal, int[] rank, SapCache cache, AncestorLabels labels, SapStats stats,
+                Landmarks landmarks) {
+        num_of_vertices = internal.V();
+        this.rank = rank;
+        order = invert(rank);
+        offsets = internal.offsets();
+        targets = internal.targets();
+        this.cache = cache;
+        this.labels = labels;
+        this.stats = stats;
+        this.landmarks = landmarks;
+        reach = new Reachability(num_of_vertices, offsets, targets);
+        scratch = new_scratch(num_of_vertices, offsets, targets, reach);
+    }
+
+    // each thread lazily gets its own O(V) scratch on its first query
+    // neither the scratch nor the supplier may refer to the SAP: a thread's
+    // ThreadLocalMap holds its scratch strongly, so a path back to the SAP, and
+    // from there to the ThreadLocal key, would keep every superseded SAP a
+    // thread ever queried alive for as long as the thread lives
+    private static ThreadLocal<SearchScratch> new_scratch(int V, int[] offsets, int[] targets,
+                                                          Reachability reach) {
+        return ThreadLocal.withInitial(() -> new SearchScratch(V, offsets, targets, reach));
+    }
+
+    // SAP over G, an updated copy of this SAP's graph in which only the
+    // vertices marked in changed, and any vertices added past this graph, have
+    // different ancestors; cached results and labels that involve none of
+    // those vertices are still exact and carry over, the rest are dropped or
+    // recomputed; landmark distances of the changed vertices' descendants
+    // shift, so landmarks are picked and measured again
+    // a renumbered SAP renumbers the updated graph afresh, which moves internal
+    // ids, so its labels are rebuilt rather than carried over
+    // this SAP is left untouched, so queries already running on it stay
+    // consistent
+    SAP updated(CompactDigraph G, boolean[] changed) {
+        if (G.V() < num_of_vertices || changed.length != num_of_vertices) {
+            throw new IllegalArgumentException();
+        }
+        SapCache new_cache = cache == null ? null : cache.copy_without(changed);
+        if (rank != null) {
+            int[] new_rank = top_down_rank(G);
+            CompactDigraph internal = G.renumbered(new_rank);
+            AncestorLabels new_labels = labels == null
+                ? null : new AncestorLabels(internal.V(), internal.offsets(), internal.targets());
+            Landmarks new_landmarks = landmarks == null
+                ? null : new Landmarks(internal.V(), internal.offsets(), internal.targets(), landmarks.max_count);
+            return new SAP(internal, new_rank, new_cache, new_labels, stats, new_landmarks);
+        }
+        AncestorLabels new_labels = labels == null
+            ? null : new AncestorLabels(labels, changed, G.V(), G.offsets(), G.targets());
+        Landmarks new_landmarks = landmarks == null
+            ? null : new Landmarks(G.V(), G.offsets(), G.targets(), landmarks.max_count);
+        return new SAP(G, null, new_cache, new_labels, stats, new_landmarks);
+    }
+
+    // rank[v] is the position of v in G's top-down BFS order
+    private static int[] top_down_rank(CompactDigraph G) {
+        return invert(G.top_down_order());
+    }
+
+    private static int[] invert(int[] permutation) {
+        if (permutation == null) {
+            return null;
+        }
+        int[] inverse = new int[permutation.length];
+        for (int i = 0; i < permutation.length; ++i) {
+            inverse[permutation[i]] = i;
+        }
+        return inverse;
+    }
+
+    private int to_internal(int v) {
+        return rank == null ? v : rank[v];
+    }
+
+    private int[] to_internal(int[] vertices) {
+        if (rank == null) {
+            return vertices;
+        }
+        int[] mapped = new int[vertices.length];
+        for (int i = 0; i < vertices.length; ++i) {
+            mapped[i] = rank[vertices[i]];
+        }
+        return mapped;
+    }
+
+    private int to_external(int n) {
+        return order == null || n == -1 ? n : order[n];
+    }
+
+    private static CompactDigraph compact(Digraph G) {
         if (G == null) {
             throw new IllegalArgumentException();
         }
-        // make copy of G
-        graph = new Digraph(G);
+        return new CompactDigraph(G);
+    }
+
+    // the result cache, or null if caching is disabled
+    public SapCache cache() {
+        return cache;
+    }
+
+    // number of landmarks and their build time, or null if they are disabled
+    public String landmarkStats() {
+        if (landmarks == null) {
+            return null;
+        }
+        return String.format("%d landmarks, %.1f MB, built in %.1f ms", landmarks.count, landmarks.bytes() / 1e6,
+                             landmarks.build_nanos / 1e6);
     }
 
-    private void validateNode(int node, Digraph G) {
-        if (node < G.V() && node >= 0) {
+    // per-query instrumentation, or null if it is disabled
+    public SapStats stats() {
+        return stats;
+    }
+
+    // size and build time of the ancestor labels, or null if they are disabled
+    public String labelStats() {
+        if (labels == null) {
+            return null;
+        }
+        return String.format("%d entries, %.1f MB, built in %.1f ms", labels.vertices.length,
+                             labels.bytes() / 1e6, labels.build_nanos / 1e6);
+    }
+
+    private void validateNode(int node) {
+        if (node < num_of_vertices && node >= 0) {
             return;
         }
         throw new IllegalArgumentException("vertex argument is outside its prescribed range");
     }
 
-    private void validateNodes(Iterable<Integer> nodes, Digraph G) {
+    // validates the vertices and copies them into an array
+    private int[] validateNodes(Iterable<Integer> nodes) {
         if (nodes == null) {
             throw new IllegalArgumentException("Null argument");
         }
+        int count = 0;
         for (Integer n : nodes) {
             if (n == null) {
                 throw new IllegalArgumentException("vertex argument is outside its prescribed range");
             }
-            validateNode(n, G);
+            validateNode(n);
+            ++count;
+        }
+        int[] ids = new int[count];
+        int i = 0;
+        for (int n : nodes) {
+            ids[i++] = n;
         }
-        return;
+        return ids;
     }
 
-    // length of shortest ancestral path between v and w; -1 if no such path
-    public int length(int v, int w) {
-        validateNode(v, graph);
-        validateNode(w, graph);
-        BreadthFirstDirectedPaths v_bfs = new BreadthFirstDirectedPaths(graph, v);
-        BreadthFirstDirectedPaths w_bfs = new BreadthFirstDirectedPaths(graph, w);
-        int min_length = Integer.MAX_VALUE;
-        for (int n = 0; n < graph.V(); ++n) {
-            if (w_bfs.hasPathTo(n) && v_bfs.hasPathTo(n)) {
-                min_length = Math.min((v_bfs.distTo(n) + w_bfs.distTo(n)), min_length);
+    private void validateNodes(int[] nodes) {
+        if (nodes == null) {
+            throw new IllegalArgumentException("Null argument");
+        }
+        for (int n : nodes) {
+            validateNode(n);
+        }
+    }
+
+    // preallocated state for the lockstep bidirectional BFS; side 0 grows from
+    // v and side 1 from w
+    // a vertex is visited by a side iff its mark equals that side's current
+    // stamp, so a new query resets in O(1) instead of clearing O(V) arrays, and
+    // a warmed-up query allocates nothing; stamping each side separately lets a
+    // batch keep one finished side while the other side is restarted
+    private static class SearchScratch {
+        private final int[] offsets; // the graph and reachability of the SAP it belongs to
+        private final int[] targets;
+        private final Reachability reach;
+        private final int[][] mark;
+        private final int[][] dist;
+        private final int[][] queue; // each vertex is enqueued at most once per side
+        private final int[][] parent; // the vertex each one was discovered from, -1 for sources
+        private final int[] head = new int[2];
+        private final int[] tail = new int[2];
+        private final int[] depth = new int[2];
+        private final int[] stamp = new int[2];
+        // top-level components reached by each side's sources, for pruning
+        private final long[][] seed_mask;
+        private int length;
+        private int ancestor;
+        // work done by the current query, for instrumentation
+        private long dequeued;
+        private long scanned;
+        private int max_frontier;
+
+        public SearchScratch(int V, int[] offsets, int[] targets, Reachability reach) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.reach = reach;
+            seed_mask = new long[2][reach.words()];
+            mark = new int[2][V];
+            dist = new int[2][V];
+            queue = new int[2][V];
+            parent = new int[2][V];
+        }
+
+        public void clear_counters() {
+            dequeued = 0;
+            scanned = 0;
+            max_frontier = 0;
+        }
+
+        public void begin() {
+            reset(0);
+            restart(1);
+        }
+
+        // clear one side and the result, keeping the other side's vertices
+        public void restart(int side) {
+            reset(side);
+            length = Integer.MAX_VALUE;
+            ancestor = -1;
+        }
+
+        private void reset(int side) {
+            if (stamp[side] == Integer.MAX_VALUE) {
+                Arrays.fill(mark[side], 0);
+                stamp[side] = 0;
+            }
+            ++stamp[side];
+            head[side] = 0;
+            tail[side] = 0;
+            depth[side] = 0;
+            Arrays.fill(seed_mask[side], 0);
+        }
+
+        private boolean visited(int side, int n) {
+            return mark[side][n] == stamp[side];
+        }
+
+        // put a source at distance 0; a source the other side already holds is
+        // an ancestral path of length 0
+        public void seed(int side, int n) {
+            if (visited(side, n)) {
+                return;
+            }
+            if (reach.words() > 0) {
+                reach.add(n, seed_mask[side]);
+            }
+            visit(side, n, 0, -1);
+        }
+
+        private void visit(int side, int n, int d, int from) {
+            mark[side][n] = stamp[side];
+            dist[side][n] = d;
+            parent[side][n] = from;
+            queue[side][tail[side]++] = n;
+            if (visited(1 - side, n) && d + dist[1 - side][n] < length) {
+                length = d + dist[1 - side][n];
+                ancestor = n;
+            }
+        }
+
+        // record a distance for a side without queueing the vertex, keeping the
+        // smaller one if the vertex is already marked
+        public void relax(int side, int n, int d) {
+            if (!visited(side, n)) {
+                mark[side][n] = stamp[side];
+                dist[side][n] = d;
+            } else if (d < dist[side][n]) {
+                dist[side][n] = d;
             }
         }
-        if (min_length == Integer.MAX_VALUE) {
-            return -1;
+
+        // expand one side over all of its ancestors, with no cutoff
+        public void exhaust(int side) {
+            while (head[side] < tail[side]) {
+                expand_level(side, false);
+            }
+        }
+
+        private boolean active(int side) {
+            return head[side] < tail[side] && depth[side] + 1 < length;
+        }
+
+        // each side expands one whole level per turn and stops once its next
+        // level would be at least as deep as the best ancestral path found so
+        // far, so a query only touches vertices above v and w up to the depth
+        // of the answer
+        public void run() {
+            int side = 0;
+            while (true) {
+                boolean v_active = active(0);
+                boolean w_active = active(1);
+                if (!v_active && !w_active) {
+                    break;
+                }
+                if (!v_active) {
+                    side = 1;
+                } else if (!w_active) {
+                    side = 0;
+                }
+                expand_level(side, reach.words() > 0);
+                side = 1 - side;
+            }
+            if (ancestor == -1) {
+                length = -1;
+            }
+        }
+
+        // dequeue every vertex at the current depth and discover its hypernyms
+        // when pruning, hypernyms that reach none of the other side's top-level
+        // components are skipped, since none of their ancestors is common
+        private void expand_level(int side, boolean prune) {
+            int level_end = tail[side];
+            int next_depth = depth[side] + 1;
+            dequeued += level_end - head[side];
+            max_frontier = Math.max(max_frontier, level_end - head[side]);
+            while (head[side] < level_end) {
+                int n = queue[side][head[side]++];
+                scanned += offsets[n + 1] - offsets[n];
+                for (int e = offsets[n]; e < offsets[n + 1]; ++e) {
+                    int next = targets[e];
+                    if (!visited(side, next) && (!prune || reach.intersects(next, seed_mask[1 - side]))) {
+                        visit(side, next, next_depth, n);
+                    }
+                }
+            }
+            depth[side] = next_depth;
         }
-        return min_length;
     }
 
-    // a common ancestor of v and w that participates in a shortest ancestral
-    // path; -1 if no such path
-    public int ancestor(int v, int w) {
-        validateNode(v, graph);
-        validateNode(w, graph);
-        int min_length = length(v, w);
-        if (min_length == -1) {
-            return min_length;
-        }
-        BreadthFirstDirectedPaths v_bfs = new BreadthFirstDirectedPaths(graph, v);
-        BreadthFirstDirectedPaths w_bfs = new BreadthFirstDirectedPaths(graph, w);
-        for (int n = 0; n < graph.V(); ++n) {
-            if (w_bfs.hasPathTo(n) && v_bfs.hasPathTo(n)) {
-                int local_dist = v_bfs.distTo(n) + w_bfs.distTo(n);
-                if (local_dist == min_length) {
-                    return n;
+    // runs on the calling thread's scratch, which holds the result afterwards
+    // pairs proven to share no ancestor are answered without any traversal
+    // takes internal ids; the ancestor it finds is internal as well
+    private SearchScratch search(int v, int w) {
+        SearchScratch s = scratch.get();
+        s.clear_counters();
+        if (reach.disjoint(v, w)) {
+            s.length = -1;
+            s.ancestor = -1;
+            return s;
+        }
+        if (labels != null) {
+            label_search(s, v, w);
+            return s;
+        }
+        s.begin();
+        s.seed(0, v);
+        s.seed(1, w);
+        s.run();
+        return s;
+    }
+
+    private SearchScratch search(int[] v, int[] w) {
+        SearchScratch s = scratch.get();
+        s.clear_counters();
+        s.begin();
+        if (reach.disjoint(v, w)) {
+            s.length = -1;
+            return s;
+        }
+        if (labels != null) {
+            label_search(s, v, w);
+            return s;
+        }
+        return traverse(s, v, w);
+    }
+
+    // the bidirectional BFS itself, which also leaves parent pointers behind
+    private SearchScratch traverse(SearchScratch s, int[] v, int[] w) {
+        for (int n : v) {
+            s.seed(0, n);
+        }
+        for (int n : w) {
+            s.seed(1, n);
+        }
+        s.run();
+        return s;
+    }
+
+    // merges the sorted labels of v and w
+    private void label_search(SearchScratch s, int v, int w) {
+        int[] vertices = labels.vertices;
+        int[] dists = labels.dists;
+        int i = labels.offsets[v];
+        int j = labels.offsets[w];
+        int i_end = labels.offsets[v + 1];
+        int j_end = labels.offsets[w + 1];
+        s.length = Integer.MAX_VALUE;
+        s.ancestor = -1;
+        while (i < i_end && j < j_end) {
+            if (vertices[i] < vertices[j]) {
+                ++i;
+            } else if (vertices[i] > vertices[j]) {
+                ++j;
+            } else {
+                if (dists[i] + dists[j] < s.length) {
+                    s.length = dists[i] + dists[j];
+                    s.ancestor = vertices[i];
                 }
+                ++i;
+                ++j;
             }
         }
-        return -1;
+        s.scanned = (i - labels.offsets[v]) + (j - labels.offsets[w]);
+        if (s.ancestor == -1) {
+            s.length = -1;
+        }
     }
 
-    // length of shortest ancestral path between any vertex in v and any vertex
-    // in w; -1 if no such path
-    // note: we're doing BFS multiple times, which is still bounded by O(E + V),
-    // since BFS is O(E + V)
-    public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        validateNodes(v, graph);
-        validateNodes(w, graph);
+    // side 0 collects the smallest distance to every ancestor of the v set from
+    // its labels, then the labels of the w set are probed against it
+    private void label_search(SearchScratch s, int[] v, int[] w) {
+        for (int n : v) {
+            s.scanned += labels.offsets[n + 1] - labels.offsets[n];
+            for (int e = labels.offsets[n]; e < labels.offsets[n + 1]; ++e) {
+                s.relax(0, labels.vertices[e], labels.dists[e]);
+            }
+        }
+        for (int n : w) {
+            s.scanned += labels.offsets[n + 1] - labels.offsets[n];
+            for (int e = labels.offsets[n]; e < labels.offsets[n + 1]; ++e) {
+                int x = labels.vertices[e];
+                if (s.visited(0, x) && s.dist[0][x] + labels.dists[e] < s.length) {
+                    s.length = s.dist[0][x] + labels.dists[e];
+                    s.ancestor = x;
+                }
+            }
+        }
+        if (s.ancestor == -1) {
+            s.length = -1;
+        }
+    }
+
+    // the hyponyms of v are the targets of v in the reverse graph; racing
+    // threads may each build it, but they build the same graph
+    private CompactDigraph hyponyms() {
+        CompactDigraph reverse = hyponyms;
+        if (reverse == null) {
+            reverse = new CompactDigraph(offsets, targets).reverse();
+            hyponyms = reverse;
+        }
+        return reverse;
+    }
+
+    // hands every vertex that shares an ancestor with the sources to visitor,
+    // in nondecreasing order of SAP distance to the source set, until visitor
+    // returns false
+    // a shortest ancestral path climbs hypernyms from a source up to the common
+    // ancestor and then descends hyponyms to the vertex, so side 0 runs a BFS
+    // up through hypernyms and side 1 a BFS down through hyponyms, which every
+    // vertex side 0 reaches joins at the same distance; both advance one level
+    // at a time, so only vertices up to the last visited distance are touched
+    void nearest(int[] sources, Visitor visitor) {
+        validateNodes(sources);
+        sources = to_internal(sources);
+        CompactDigraph reverse = hyponyms();
+        int[] down_offsets = reverse.offsets();
+        int[] down_targets = reverse.targets();
+        SearchScratch s = scratch.get();
+        s.begin();
+        for (int n : sources) {
+            if (!s.visited(0, n)) {
+                s.visit(0, n, 0, -1);
+                s.visit(1, n, 0, -1);
+            }
+        }
+        for (int d = 0; s.head[1] < s.tail[1]; ++d) {
+            int down_end = s.tail[1];
+            for (int i = s.head[1]; i < down_end; ++i) {
+                if (!visitor.visit(to_external(s.queue[1][i]), d)) {
+                    return;
+                }
+            }
+            // climb one level; new ancestors are also reached downwards at d + 1
+            int up_end = s.tail[0];
+            while (s.head[0] < up_end) {
+                int n = s.queue[0][s.head[0]++];
+                for (int e = offsets[n]; e < offsets[n + 1]; ++e) {
+                    int next = targets[e];
+                    if (!s.visited(0, next)) {
+                        s.visit(0, next, d + 1, n);
+                        if (!s.visited(1, next)) {
+                            s.visit(1, next, d + 1, -1);
+                        }
+                    }
+                }
+            }
+            // descend one level from the vertices just visited
+            while (s.head[1] < down_end) {
+                int n = s.queue[1][s.head[1]++];
+                for (int e = down_offsets[n]; e < down_offsets[n + 1]; ++e) {
+                    int next = down_targets[e];
+                    if (!s.visited(1, next)) {
+                        s.visit(1, next, d + 1, n);
+                    }
+                }
+            }
+        }
+    }
+
+    // every ancestor of a source set with its distance from the set, sorted by
+    // vertex id; sources count as their own ancestors at distance 0
+    static class Profile {
+        private final SAP sap; // the SAP whose internal ids the ancestors are
+        private final int[] ancestors;
+        private final int[] dists;
+
+        private Profile(SAP sap, int[] ancestors, int[] dists) {
+            this.sap = sap;
+            this.ancestors = ancestors;
+            this.dists = dists;
+        }
+
+        // distance to the farthest ancestor; a path between two profiles is
+        // never longer than the sum of their heights
+        int height() {
+            int height = 0;
+            for (int d : dists) {
+                height = Math.max(height, d);
+            }
+            return height;
+        }
+    }
+
+    // one full BFS over the ancestors of sources; the ancestors are kept as
+    // internal ids, so profiles only compare with profiles of the same SAP
+    Profile profile(int[] sources) {
+        validateNodes(sources);
+        sources = to_internal(sources);
+        SearchScratch s = scratch.get();
+        s.begin();
+        for (int n : sources) {
+            s.seed(0, n);
+        }
+        s.exhaust(0);
+        // sort (vertex, dist) pairs by vertex, packed into longs
+        int count = s.tail[0];
+        long[] packed = new long[count];
+        for (int i = 0; i < count; ++i) {
+            int n = s.queue[0][i];
+            packed[i] = ((long) n << 32) | s.dist[0][n];
+        }
+        Arrays.sort(packed);
+        int[] ancestors = new int[count];
+        int[] dists = new int[count];
+        for (int i = 0; i < count; ++i) {
+            ancestors[i] = (int) (packed[i] >>> 32);
+            dists[i] = (int) packed[i];
+        }
+        return new Profile(this, ancestors, dists);
+    }
+
+    // length of the shortest ancestral path between the source sets of a and b,
+    // by merging their sorted ancestor lists; -1 if no such path
+    // both must come from the same SAP: after an update, or with renumbering,
+    // the ids of another SAP mean different vertices
+    static int length(Profile a, Profile b) {
+        if (a.sap != b.sap) {
+            throw new IllegalArgumentException("profiles of different SAPs cannot be compared");
+        }
         int min_length = Integer.MAX_VALUE;
-        for (int node1 : v) {
-            for (int node2 : w) {
-                int dist = length(node1, node2);
-                if (dist != -1) {
-                    min_length = Math.min(min_length, dist);
+        int i = 0;
+        int j = 0;
+        while (i < a.ancestors.length && j < b.ancestors.length) {
+            if (a.ancestors[i] < b.ancestors[j]) {
+                ++i;
+            } else if (a.ancestors[i] > b.ancestors[j]) {
+                ++j;
+            } else {
+                min_length = Math.min(min_length, a.dists[i++] + b.dists[j++]);
+            }
+        }
+        return min_length == Integer.MAX_VALUE ? -1 : min_length;
+    }
+
+    // lengths for a batch of set pairs (v[k], w[k]); pairs with the same
+    // v_key must have the same v set
+    // pairs are sorted by v_key and split across the fork-join pool; a worker
+    // walks all ancestors of a v set once, keeps them on side 0 of its scratch,
+    // and then only restarts the w side for each pair of the group
+    int[] batch_lengths(int[][] v, int[][] w, int[] v_key) {
+        long start = stats == null ? 0 : System.nanoTime();
+        int count = v_key.length;
+        if (rank != null) {
+            v = v.clone();
+            w = w.clone();
+            for (int k = 0; k < count; ++k) {
+                v[k] = to_internal(v[k]);
+                w[k] = to_internal(w[k]);
+            }
+        }
+        long[] by_group = new long[count];
+        for (int k = 0; k < count; ++k) {
+            by_group[k] = ((long) v_key[k] << 32) | k;
+        }
+        Arrays.sort(by_group);
+        int[] lengths = new int[count];
+        ForkJoinPool.commonPool().invoke(new BatchTask(v, w, by_group, lengths, 0, count));
+        if (stats != null) {
+            stats.record_batch(System.nanoTime() - start, count);
+        }
+        return lengths;
+    }
+
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 512;
+        private final int[][] v;
+        private final int[][] w;
+        private final long[] by_group; // (v_key << 32 | pair index), sorted so groups are contiguous
+        private final int[] lengths;
+        private final int lo;
+        private final int hi;
+
+        public BatchTask(int[][] v, int[][] w, long[] by_group, int[] lengths, int lo, int hi) {
+            this.v = v;
+            this.w = w;
+            this.by_group = by_group;
+            this.lengths = lengths;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > LEAF_SIZE) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new BatchTask(v, w, by_group, lengths, lo, mid),
+                          new BatchTask(v, w, by_group, lengths, mid, hi));
+                return;
+            }
+            if (labels != null) {
+                for (int i = lo; i < hi; ++i) {
+                    int k = (int) by_group[i];
+                    long start = stats == null ? 0 : System.nanoTime();
+                    SearchScratch s = search(v[k], w[k]);
+                    lengths[k] = s.length;
+                    record(s, start);
                 }
+                return;
+            }
+            SearchScratch s = scratch.get();
+            long group = -1;
+            for (int i = lo; i < hi; ++i) {
+                int k = (int) by_group[i];
+                long start = stats == null ? 0 : System.nanoTime();
+                s.clear_counters();
+                if (reach.disjoint(v[k], w[k])) {
+                    lengths[k] = -1;
+                } else {
+                    // the walk up from a shared v set is counted for the
+                    // first pair of its group
+                    if (by_group[i] >>> 32 != group) {
+                        group = by_group[i] >>> 32;
+                        s.begin();
+                        for (int n : v[k]) {
+                            s.seed(0, n);
+                        }
+                        s.exhaust(0);
+                    }
+                    s.restart(1);
+                    for (int n : w[k]) {
+                        s.seed(1, n);
+                    }
+                    s.run();
+                    lengths[k] = s.length;
+                }
+                record(s, start);
             }
         }
-        if (min_length == Integer.MAX_VALUE) {
-            return -1;
+
+        // one pair of the batch, timed on its own
+        private void record(SearchScratch s, long start) {
+            if (stats != null) {
+                stats.record_search(System.nanoTime() - start, s.dequeued, s.scanned, s.max_frontier, false);
+            }
         }
-        return min_length;
+    }
+
+    // lengths of shortest ancestral paths for each pair (v[k], w[k]); -1 where
+    // there is no such path
+    // pairs are answered in parallel and pairs sharing a v vertex reuse one
+    // traversal from it
+    public int[] lengths(int[] v, int[] w) {
+        if (v == null || w == null || v.length != w.length) {
+            throw new IllegalArgumentException("v and w must be non-null and of equal length");
+        }
+        int[][] v_sets = new int[v.length][];
+        int[][] w_sets = new int[w.length][];
+        for (int k = 0; k < v.length; ++k) {
+            validateNode(v[k]);
+            validateNode(w[k]);
+            v_sets[k] = new int[] { v[k] };
+            w_sets[k] = new int[] { w[k] };
+        }
+        return batch_lengths(v_sets, w_sets, v);
+    }
+
+    // single-pair result, served from the cache when enabled
+    private SapResult lookup(int v, int w) {
+        validateNode(v);
+        validateNode(w);
+        long start = stats == null ? 0 : System.nanoTime();
+        SapCache.Key key = null;
+        if (cache != null) {
+            key = SapCache.key(v, w);
+            SapResult cached = cached(key, start);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return finish(search(to_internal(v), to_internal(w)), key, start);
+    }
+
+    // set result, served from the cache when enabled
+    SapResult query_sets(int[] v, int[] w) {
+        validateNodes(v);
+        validateNodes(w);
+        long start = stats == null ? 0 : System.nanoTime();
+        SapCache.Key key = null;
+        if (cache != null) {
+            key = SapCache.key(v, w);
+            SapResult cached = cached(key, start);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return finish(search(to_internal(v), to_internal(w)), key, start);
+    }
+
+    private SapResult cached(SapCache.Key key, long start) {
+        SapResult cached = cache.get(key);
+        if (cached != null && stats != null) {
+            stats.record_hit(System.nanoTime() - start);
+        }
+        return cached;
+    }
+
+    // caches and records the result of a search that started at start
+    private SapResult finish(SearchScratch s, SapCache.Key key, long start) {
+        SapResult result = new SapResult(s.length, to_external(s.ancestor), null);
+        if (cache != null) {
+            cache.put(key, result);
+        }
+        if (stats != null) {
+            stats.record_search(System.nanoTime() - start, s.dequeued, s.scanned, s.max_frontier, cache != null);
+        }
+        return result;
+    }
+
+    // length of shortest ancestral path between v and w; -1 if no such path
+    public int length(int v, int w) {
+        if (cache != null || stats != null) {
+            return lookup(v, w).length();
+        }
+        validateNode(v);
+        validateNode(w);
+        return search(to_internal(v), to_internal(w)).length;
+    }
+
+    // a common ancestor of v and w that participates in a shortest ancestral
+    // path; -1 if no such path
+    public int ancestor(int v, int w) {
+        if (cache != null || stats != null) {
+            return lookup(v, w).ancestor();
+        }
+        validateNode(v);
+        validateNode(w);
+        return to_external(search(to_internal(v), to_internal(w)).ancestor);
+    }
+
+    // length of shortest ancestral path between any vertex in v and any vertex
+    // in w; -1 if no such path
+    // each side is one multi-source BFS seeded with all of its vertices, so a
+    // set query costs about the same as a single-pair one
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        return query_sets(validateNodes(v), validateNodes(w)).length();
     }
 
     // a common ancestor that participates in shortest ancestral path; -1 if no
     // such path
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        validateNodes(v, graph);
-        validateNodes(w, graph);
-        int min_length = length(v, w);
-        if (min_length == -1) {
-            return min_length;
-        }
-        for (int node1 : v) {
-            for (int node2 : w) {
-                int local_length = length(node1, node2);
-                if (local_length == min_length) {
-                    return ancestor(node1, node2);
-                }
-            }
+        return query_sets(validateNodes(v), validateNodes(w)).ancestor();
+    }
+
+    // length and common ancestor of v and w from a single search
+    public SapResult query(int v, int w) {
+        return lookup(v, w);
+    }
+
+    // length and common ancestor of the sets v and w from a single search
+    public SapResult query(Iterable<Integer> v, Iterable<Integer> w) {
+        return query_sets(validateNodes(v), validateNodes(w));
+    }
+
+    // estimated length of shortest ancestral path between v and w, from the
+    // landmarks selected in SapOptions: never below length(v, w), and equal to
+    // it when a shortest ancestral path meets at a landmark; -1 if v and w
+    // share no landmark
+    public int approximateLength(int v, int w) {
+        validateNode(v);
+        validateNode(w);
+        return approximate_landmarks().estimate(to_internal(v), to_internal(w));
+    }
+
+    // as above, between any vertex in v and any vertex in w
+    public int approximateLength(Iterable<Integer> v, Iterable<Integer> w) {
+        return approximate_sets(validateNodes(v), validateNodes(w));
+    }
+
+    int approximate_sets(int[] v, int[] w) {
+        validateNodes(v);
+        validateNodes(w);
+        return approximate_landmarks().estimate(to_internal(v), to_internal(w));
+    }
+
+    private Landmarks approximate_landmarks() {
+        if (landmarks == null) {
+            throw new IllegalStateException("landmarks are disabled; enable them with SapOptions.landmarks");
+        }
+        return landmarks;
+    }
+
+    // a shortest ancestral path between v and w as vertex ids, v first, then
+    // its hypernyms up to the common ancestor, then down to w; empty if there
+    // is no such path
+    // the path is read off the parent pointers of the same bidirectional BFS
+    // that finds the length and ancestor, so no extra traversal is needed; the
+    // BFS runs even when labels are enabled, since labels keep no paths
+    public int[] path(int v, int w) {
+        validateNode(v);
+        validateNode(w);
+        return path_sets(new int[] { v }, new int[] { w });
+    }
+
+    // as above, from some vertex in v to some vertex in w
+    public int[] path(Iterable<Integer> v, Iterable<Integer> w) {
+        return path_sets(validateNodes(v), validateNodes(w));
+    }
+
+    int[] path_sets(int[] v, int[] w) {
+        validateNodes(v);
+        validateNodes(w);
+        v = to_internal(v);
+        w = to_internal(w);
+        SearchScratch s = scratch.get();
+        s.clear_counters();
+        s.begin();
+        if (reach.disjoint(v, w) || traverse(s, v, w).ancestor == -1) {
+            return new int[0];
+        }
+        int[] path = new int[s.length + 1];
+        int up = s.dist[0][s.ancestor];
+        // side 0's parents lead from the ancestor back down to a vertex of v,
+        // and side 1's from the ancestor down to a vertex of w
+        int i = up;
+        for (int n = s.ancestor; n != -1; n = s.parent[0][n]) {
+            path[i--] = to_external(n);
+        }
+        i = up;
+        for (int n = s.ancestor; n != -1; n = s.parent[1][n]) {
+            path[i++] = to_external(n);
         }
-        return -1;
+        return path;
     }
 
     private static void test_basic(String[] args) {
@@ -128,9 +951,7 @@ public class SAP {
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            StdOut.println(sap.query(v, w));
         }
     }
 
@@ -153,9 +974,7 @@ public class SAP {
             w.add(w1);
             w.add(w2);
             w.add(w3);
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            StdOut.println(sap.query(v, w));
         }
     }
 
@@ -0,0 +1,224 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// bounded LRU cache of SAP results shared by all callers of a SAP
+// keys are symmetric: (v, w) and (w, v) map to the same entry, and a set query
+// is keyed by its sorted, de-duplicated vertex ids, so any ordering or
+// repetition of the same sets hits the same entry
+// the cache is striped into up to SEGMENTS segments by key hash, each an
+// access-ordered LRU map with its own lock and an equal share of the capacity,
+// so concurrent callers only contend when their keys land in the same segment;
+// a lock is only held for a hash lookup, never during a traversal
+// eviction is least recently used within a segment, which approximates global
+// LRU; counters are LongAdders, so counting takes no lock at all
+public class SapCache {
+    private static final int SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final int shift; // 32 - log2(segments.length)
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public static class Key {
+        private final int[] v;
+        private final int[] w;
+        private final int hash;
+
+        // v and w must be sorted and distinct
+        private Key(int[] v, int[] w) {
+            // order the two sides so that the key is symmetric
+            if (compare(v, w) <= 0) {
+                this.v = v;
+                this.w = w;
+            } else {
+                this.v = w;
+                this.w = v;
+            }
+            this.hash = 31 * Arrays.hashCode(this.v) + Arrays.hashCode(this.w);
+        }
+
+        private static int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length && i < b.length; ++i) {
+                if (a[i] != b[i]) {
+                    return Integer.compare(a[i], b[i]);
+                }
+            }
+            return Integer.compare(a.length, b.length);
+        }
+
+        private boolean contains_any(boolean[] vertices) {
+            for (int n : v) {
+                if (n < vertices.length && vertices[n]) {
+                    return true;
+                }
+            }
+            for (int n : w) {
+                if (n < vertices.length && vertices[n]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return hash == that.hash && Arrays.equals(v, that.v) && Arrays.equals(w, that.w);
+        }
+    }
+
+    // one stripe: access-ordered, so the eldest entry is the least recently
+    // used one; guarded by its own monitor
+    private static class Segment extends LinkedHashMap<Key, SapResult> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private final transient LongAdder evictions;
+
+        private Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<Key, SapResult> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public SapCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        // every segment holds at least one entry, and the shares add up to
+        // the capacity
+        int count = Math.min(SEGMENTS, Integer.highestOneBit(capacity));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0), evictions);
+        }
+        this.shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    // picks the segment from the top bits of a multiplicative hash, so that
+    // the low bits, which index the buckets inside a segment, stay spread out
+    private Segment segment(Key key) {
+        return segments.length == 1 ? segments[0] : segments[(key.hash * 0x9e3779b9) >>> shift];
+    }
+
+    public static Key key(int v, int w) {
+        return new Key(new int[] { v }, new int[] { w });
+    }
+
+    public static Key key(int[] v, int[] w) {
+        return new Key(sorted_ids(v), sorted_ids(w));
+    }
+
+    private static int[] sorted_ids(int[] nodes) {
+        int count = nodes.length;
+        int[] ids = Arrays.copyOf(nodes, count);
+        Arrays.sort(ids);
+        // drop repeated ids
+        int distinct = 0;
+        for (int i = 0; i < count; ++i) {
+            if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return distinct == count ? ids : Arrays.copyOf(ids, distinct);
+    }
+
+    // cached result for the key; null on a miss
+    public SapResult get(Key key) {
+        Segment segment = segment(key);
+        SapResult result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    public void put(Key key, SapResult result) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, result);
+        }
+    }
+
+    // copy holding every entry, in LRU order per segment, whose key contains
+    // no vertex v with changed[v], along with the counters so far
+    // a copy of the same capacity has the same segments, so every entry stays
+    // in the segment it was in
+    public SapCache copy_without(boolean[] changed) {
+        SapCache copy = new SapCache(capacity);
+        for (int i = 0; i < segments.length; ++i) {
+            synchronized (segments[i]) {
+                for (Map.Entry<Key, SapResult> entry : segments[i].entrySet()) {
+                    if (!entry.getKey().contains_any(changed)) {
+                        copy.segments[i].put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        copy.hits.add(hits.sum());
+        copy.misses.add(misses.sum());
+        copy.evictions.add(evictions.sum());
+        return copy;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long hit_count = hits.sum();
+        long lookups = hit_count + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hit_count / lookups;
+    }
+
+    public String toString() {
+        return String.format("size: %d/%d, hits: %d, misses: %d, evictions: %d, hit rate: %.3f", size(), capacity,
+                             hits(), misses(), evictions(), hitRate());
+    }
+}
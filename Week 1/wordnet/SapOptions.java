@@ -0,0 +1,72 @@
+// optional SAP features, all disabled by default
+// setters return this, so options can be chained:
+//   new SapOptions().cacheCapacity(10000).labels(true)
+public class SapOptions {
+    private int cacheCapacity;
+    private boolean labels;
+    private boolean instrument;
+    private int landmarks;
+    private boolean renumber;
+
+    // keep results of up to cacheCapacity distinct queries in an LRU cache; 0
+    // disables the cache
+    public SapOptions cacheCapacity(int cacheCapacity) {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("cache capacity must not be negative");
+        }
+        this.cacheCapacity = cacheCapacity;
+        return this;
+    }
+
+    public int cacheCapacity() {
+        return cacheCapacity;
+    }
+
+    // precompute every vertex's ancestors and their distances at construction,
+    // so queries merge two label lists instead of searching the graph
+    public SapOptions labels(boolean labels) {
+        this.labels = labels;
+        return this;
+    }
+
+    public boolean labels() {
+        return labels;
+    }
+
+    // record per-query latency and search effort in a SapStats; when off, a
+    // query pays only for a few counter increments
+    public SapOptions instrument(boolean instrument) {
+        this.instrument = instrument;
+        return this;
+    }
+
+    public boolean instrument() {
+        return instrument;
+    }
+
+    // precompute distances from every vertex up to this many landmarks near
+    // the roots, for approximateLength; 0 disables them
+    public SapOptions landmarks(int landmarks) {
+        if (landmarks < 0) {
+            throw new IllegalArgumentException("number of landmarks must not be negative");
+        }
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    public int landmarks() {
+        return landmarks;
+    }
+
+    // search a copy of the graph whose vertices are renumbered in BFS order
+    // from the roots, so that vertices near each other in the hierarchy sit
+    // near each other in memory; vertex ids in and out of SAP are unchanged
+    public SapOptions renumber(boolean renumber) {
+        this.renumber = renumber;
+        return this;
+    }
+
+    public boolean renumber() {
+        return renumber;
+    }
+}
@@ -0,0 +1,34 @@
+// result of a single SAP query: the length of the shortest ancestral path, the
+// common ancestor on it, and (for WordNet queries) that ancestor's synset
+public class SapResult {
+    private final int length;
+    private final int ancestor;
+    private final String synset;
+
+    public SapResult(int length, int ancestor, String synset) {
+        this.length = length;
+        this.ancestor = ancestor;
+        this.synset = synset;
+    }
+
+    // length of the shortest ancestral path; -1 if no such path
+    public int length() {
+        return length;
+    }
+
+    // common ancestor on the shortest ancestral path; -1 if no such path
+    public int ancestor() {
+        return ancestor;
+    }
+
+    // synset of the common ancestor; null for plain SAP queries or if no such
+    // path
+    public String synset() {
+        return synset;
+    }
+
+    public String toString() {
+        return "length = " + length + ", ancestor = " + ancestor
+                + (synset == null ? "" : ", synset = " + synset);
+    }
+}
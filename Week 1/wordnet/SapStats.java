@@ -0,0 +1,176 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// per-query instrumentation of a SAP, enabled with SapOptions.instrument
+// every query records its wall time, including any cache lookup; queries that
+// search record how many vertices they dequeued, how many edges (or label
+// entries) they scanned and their largest BFS level, so slow queries can be
+// told apart from slow machines
+// each pair of a batch query is recorded as a query of its own, timed from the
+// start of its search in the batch; the batch itself records its size and
+// wall time
+public class SapStats implements SapStatsMBean {
+    private final Histogram latency = new Histogram(); // nanoseconds
+    private final Histogram dequeued = new Histogram();
+    private final Histogram scanned = new Histogram();
+    private final Histogram frontier = new Histogram();
+    private final Histogram hits = new Histogram(); // latency of cache hits
+    private final Histogram misses = new Histogram(); // latency of cache misses
+    private final Histogram batch_latency = new Histogram(); // nanoseconds per batch
+    private final Histogram batch_size = new Histogram(); // pairs per batch
+
+    void record_hit(long nanos) {
+        latency.record(nanos);
+        hits.record(nanos);
+    }
+
+    // a query that ran a search; cache_miss is false when there is no cache
+    void record_search(long nanos, long vertices, long edges, int max_frontier, boolean cache_miss) {
+        latency.record(nanos);
+        dequeued.record(vertices);
+        scanned.record(edges);
+        frontier.record(max_frontier);
+        if (cache_miss) {
+            misses.record(nanos);
+        }
+    }
+
+    void record_batch(long nanos, int pairs) {
+        batch_latency.record(nanos);
+        batch_size.record(pairs);
+    }
+
+    // registers this as an MBean named WordNet:type=SapStats,name=<name> on the
+    // platform MBean server, e.g. for jconsole
+    public ObjectName register(String name) {
+        try {
+            ObjectName object_name = new ObjectName("WordNet:type=SapStats,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, object_name);
+            return object_name;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("could not register " + name, e);
+        }
+    }
+
+    public long getQueries() {
+        return latency.count();
+    }
+
+    public long getCacheHits() {
+        return hits.count();
+    }
+
+    public long getCacheMisses() {
+        return misses.count();
+    }
+
+    public double getLatencyMeanMicros() {
+        return latency.mean() / 1e3;
+    }
+
+    public double getLatencyP50Micros() {
+        return latency.percentile(0.50) / 1e3;
+    }
+
+    public double getLatencyP99Micros() {
+        return latency.percentile(0.99) / 1e3;
+    }
+
+    public double getLatencyP999Micros() {
+        return latency.percentile(0.999) / 1e3;
+    }
+
+    public double getLatencyMaxMicros() {
+        return latency.max() / 1e3;
+    }
+
+    public long getVerticesDequeuedP50() {
+        return dequeued.percentile(0.50);
+    }
+
+    public long getVerticesDequeuedP99() {
+        return dequeued.percentile(0.99);
+    }
+
+    public long getVerticesDequeuedMax() {
+        return dequeued.max();
+    }
+
+    public long getEdgesScannedP50() {
+        return scanned.percentile(0.50);
+    }
+
+    public long getEdgesScannedP99() {
+        return scanned.percentile(0.99);
+    }
+
+    public long getEdgesScannedMax() {
+        return scanned.max();
+    }
+
+    public long getFrontierP99() {
+        return frontier.percentile(0.99);
+    }
+
+    public long getFrontierMax() {
+        return frontier.max();
+    }
+
+    public long getBatches() {
+        return batch_size.count();
+    }
+
+    public double getBatchSizeMean() {
+        return batch_size.mean();
+    }
+
+    public long getBatchSizeMax() {
+        return batch_size.max();
+    }
+
+    public double getBatchLatencyP50Micros() {
+        return batch_latency.percentile(0.50) / 1e3;
+    }
+
+    public double getBatchLatencyP99Micros() {
+        return batch_latency.percentile(0.99) / 1e3;
+    }
+
+    public double getBatchLatencyMaxMicros() {
+        return batch_latency.max() / 1e3;
+    }
+
+    public void reset() {
+        latency.reset();
+        dequeued.reset();
+        scanned.reset();
+        frontier.reset();
+        hits.reset();
+        misses.reset();
+        batch_latency.reset();
+        batch_size.reset();
+    }
+
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("queries %d (cache hits %d, misses %d)\n", getQueries(), getCacheHits(),
+                                     getCacheMisses()));
+        summary.append(String.format("latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f\n",
+                                     getLatencyMeanMicros(), getLatencyP50Micros(), getLatencyP99Micros(),
+                                     getLatencyP999Micros(), getLatencyMaxMicros()));
+        summary.append(String.format("vertices dequeued: p50 %d, p99 %d, max %d\n", getVerticesDequeuedP50(),
+                                     getVerticesDequeuedP99(), getVerticesDequeuedMax()));
+        summary.append(String.format("edges scanned: p50 %d, p99 %d, max %d\n", getEdgesScannedP50(),
+                                     getEdgesScannedP99(), getEdgesScannedMax()));
+        summary.append(String.format("largest frontier: p99 %d, max %d", getFrontierP99(), getFrontierMax()));
+        if (getBatches() > 0) {
+            summary.append(String.format("\nbatches %d, size mean %.1f, max %d; latency us: p50 %.1f, p99 %.1f, "
+                                         + "max %.1f", getBatches(), getBatchSizeMean(), getBatchSizeMax(),
+                                         getBatchLatencyP50Micros(), getBatchLatencyP99Micros(),
+                                         getBatchLatencyMaxMicros()));
+        }
+        return summary.toString();
+    }
+}
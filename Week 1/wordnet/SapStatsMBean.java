@@ -0,0 +1,48 @@
+// JMX view of SapStats; latencies are in microseconds
+public interface SapStatsMBean {
+    long getQueries();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getLatencyMeanMicros();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getLatencyMaxMicros();
+
+    long getVerticesDequeuedP50();
+
+    long getVerticesDequeuedP99();
+
+    long getVerticesDequeuedMax();
+
+    long getEdgesScannedP50();
+
+    long getEdgesScannedP99();
+
+    long getEdgesScannedMax();
+
+    long getFrontierP99();
+
+    long getFrontierMax();
+
+    long getBatches();
+
+    double getBatchSizeMean();
+
+    long getBatchSizeMax();
+
+    double getBatchLatencyP50Micros();
+
+    double getBatchLatencyP99Micros();
+
+    double getBatchLatencyMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// stress test of one SAP shared by many threads, over the digraph of a
+// hypernyms file alone (e.g. hypernyms.txt, which needs no synsets file)
+// the same random vertex pairs are answered on 1, 2, 4, ... threads up to
+// max_threads; every thread count must agree with the single-threaded answers,
+// and the speedup at t threads must reach MIN_EFFICIENCY of the cores t
+// threads can use, else the run fails after printing every thread count
+// usage: java SapStressTest hypernyms.txt [max threads] [pairs]
+public class SapStressTest {
+    // fraction of linear speedup that counts as scaling; generous, since
+    // memory bandwidth and turbo clocks keep real speedups below linear
+    static final double MIN_EFFICIENCY = 0.5;
+
+    // the lowest acceptable speedup at the given number of threads; threads
+    // beyond the available processors cannot add any
+    static double min_speedup(int threads) {
+        return MIN_EFFICIENCY * Math.min(threads, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void main(String[] args) {
+        CompactDigraph graph = WordNetLoader.read_hypernyms(args[0]);
+        int processors = Runtime.getRuntime().availableProcessors();
+        int max_threads = args.length > 1 ? Integer.parseInt(args[1]) : processors;
+        int num_of_queries = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        SAP sap = new SAP(graph);
+        Random random = new Random(42);
+        int[] v = new int[num_of_queries];
+        int[] w = new int[num_of_queries];
+        for (int i = 0; i < num_of_queries; ++i) {
+            v[i] = random.nextInt(graph.V());
+            w[i] = random.nextInt(graph.V());
+        }
+        StdOut.println(graph.V() + " vertices, " + graph.E() + " edges, " + processors + " processors");
+        int[] expected = null;
+        double base_throughput = 0;
+        ArrayList<String> failures = new ArrayList<String>();
+        for (int threads = 1; threads <= max_threads; threads *= 2) {
+            int[] results = new int[num_of_queries];
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            // warm up every worker's scratch and the JIT before timing
+            run_queries(sap, pool, threads, v, w, results, num_of_queries / 10);
+            long start = System.nanoTime();
+            run_queries(sap, pool, threads, v, w, results, num_of_queries);
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+            if (expected == null) {
+                expected = results;
+            } else if (!Arrays.equals(expected, results)) {
+                throw new IllegalStateException("concurrent results differ with " + threads + " threads");
+            }
+            double throughput = num_of_queries / (elapsed / 1e9);
+            if (threads == 1) {
+                base_throughput = throughput;
+            }
+            double speedup = throughput / base_throughput;
+            boolean scales = speedup >= min_speedup(threads);
+            StdOut.printf("threads: %2d, queries/s: %10.0f, speedup: %5.2f (at least %.2f)%s\n", threads,
+                          throughput, speedup, min_speedup(threads), scales ? "" : "  FAIL");
+            if (!scales) {
+                failures.add(String.format("%.2f at %d threads", speedup, threads));
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("speedup below " + MIN_EFFICIENCY + " of linear: " + failures);
+        }
+    }
+
+    // thread t answers pairs t, t + threads, t + 2 * threads, ...
+    private static void run_queries(SAP sap, ExecutorService pool, int threads, int[] v, int[] w, int[] results,
+                                    int count) {
+        ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; ++t) {
+            final int first = t;
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i < count; i += threads) {
+                    results[i] = sap.length(v[i], w[i]);
+                }
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// the synset strings (second field of synsets.txt) by synset id, kept either
+//   on the heap   one String per synset, as parsed
+//   mapped        UTF-8 bytes left in a memory-mapped synsets.txt or snapshot,
+//                 synset id i being bytes [starts[i], ends[i]), decoded into a
+//                 fresh String on every get
+// the mapped form costs 8 bytes of offset table per synset on the heap instead
+// of a String, and only sap(), relation(), nearest() and synset() ever decode
+// synsets added after loading (WordNet.addSynset) are kept on the heap in both
+// forms; a mapped file must not change while it is in use
+// immutable, like the WordNet version that holds it
+class SynsetText {
+    private final ByteBuffer bytes; // null on the heap
+    private final int[] starts;
+    private final int[] ends;
+    private final ArrayList<String> strings; // synsets after the mapped ones
+
+    private SynsetText(ByteBuffer bytes, int[] starts, int[] ends, ArrayList<String> strings) {
+        this.bytes = bytes;
+        this.starts = starts;
+        this.ends = ends;
+        this.strings = strings;
+    }
+
+    static SynsetText on_heap(ArrayList<String> strings) {
+        return new SynsetText(null, new int[0], new int[0], strings);
+    }
+
+    // wraps the offset tables without copying them; only absolute reads are
+    // made from bytes, so it may be shared by any number of threads
+    static SynsetText mapped(ByteBuffer bytes, int[] starts, int[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("malformed synset offsets");
+        }
+        for (int i = 0; i < starts.length; ++i) {
+            if (starts[i] < 0 || starts[i] > ends[i] || ends[i] > bytes.limit()) {
+                throw new IllegalArgumentException("synset " + i + " lies outside the mapped file");
+            }
+        }
+        return new SynsetText(bytes, starts, ends, new ArrayList<String>());
+    }
+
+    int size() {
+        return starts.length + strings.size();
+    }
+
+    String get(int id) {
+        if (id >= starts.length) {
+            return strings.get(id - starts.length);
+        }
+        byte[] text = new byte[ends[id] - starts[id]];
+        for (int i = 0; i < text.length; ++i) {
+            text[i] = bytes.get(starts[id] + i);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // copy of this text with one more synset, which becomes id size()
+    SynsetText with(String synset) {
+        ArrayList<String> added = new ArrayList<String>(strings);
+        added.add(synset);
+        return new SynsetText(bytes, starts, ends, added);
+    }
+
+    public String toString() {
+        if (bytes == null) {
+            return strings.size() + " synsets on the heap";
+        }
+        return String.format("%d synsets mapped (%.1f MB offset table), %d on the heap", starts.length,
+                             8.0 * starts.length / 1e6, strings.size());
+    }
+}
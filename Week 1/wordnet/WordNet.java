@@ -1,82 +1,174 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
 
+// thread safety: the graph, synsets, noun index and SAP of a WordNet form an
+// immutable version, and SAP keeps per-thread search state, so a WordNet may be
+// shared by any number of query threads once it has been safely published (e.g.
+// via a final field or by handing it to an executor)
+// addSynset and addHypernym build the next version from the current one and
+// publish it with a single volatile write; each query reads the version once,
+// so it sees either all of an update or none of it, and updates never block
+// queries
+// synset text is only read to answer sap(), relation(), nearest() and
+// synset(), so it can be left in the memory-mapped synsets file or snapshot
+// (mapSynsets) instead of being held on the heap, and is then decoded on use
 public class WordNet {
-    private int num_of_synsets;
-    private int num_of_nouns;
-    private int num_of_edges;
-    private Digraph graph;
-    private ArrayList<String> list_of_synsets;
-    private HashMap<String, ArrayList<Integer>> words; // maps each noun to synsetId
-    private SAP sap;
+    private volatile Version current;
+    private final long load_bytes; // size of the files read at construction
+    private final long load_nanos; // time spent reading and parsing them
 
+    // one consistent state of the WordNet; never modified once published
+    private static class Version {
+        private final CompactDigraph graph; // shared read-only with SAP
+        private final SynsetText list_of_synsets;
+        private final NounIndex words; // maps each noun to its synset ids
+        private final SAP sap;
+
+        private Version(CompactDigraph graph, SynsetText list_of_synsets, NounIndex words, SAP sap) {
+            this.graph = graph;
+            this.list_of_synsets = list_of_synsets;
+            this.words = words;
+            this.sap = sap;
+        }
+    }
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
-        if (synsets == null || hypernyms == null) {
+        this(synsets, hypernyms, 0);
+    }
+
+    // as above, with up to cacheCapacity distance/sap results kept in an LRU
+    // cache in front of SAP; a capacity of 0 disables the cache
+    public WordNet(String synsets, String hypernyms, int cacheCapacity) {
+        this(synsets, hypernyms, new SapOptions().cacheCapacity(cacheCapacity));
+    }
+
+    // as above, with the optional SAP features selected in options, e.g. an
+    // LRU cache or precomputed ancestor labels
+    public WordNet(String synsets, String hypernyms, SapOptions options) {
+        this(synsets, hypernyms, options, false);
+    }
+
+    // as above; with mapSynsets, synset text stays in the memory-mapped
+    // synsets file, which must not change while this WordNet is in use
+    public WordNet(String synsets, String hypernyms, SapOptions options, boolean mapSynsets) {
+        if (synsets == null || hypernyms == null || options == null) {
             throw new IllegalArgumentException();
         }
-        init_synsets(synsets);
-        init_hypernyms(hypernyms);
-        sap = new SAP(graph);
-    }
-
-    private void init_synsets(String synsets) {
-        list_of_synsets = new ArrayList<String>();
-        words = new HashMap<String, ArrayList<Integer>>();
-        In synsetIn = new In(synsets);
-        while (synsetIn.hasNextLine()) {
-            String line = synsetIn.readLine();
-            String[] splitLine = line.split(",");
-            Integer synsetId = Integer.parseInt(splitLine[0]);
-            String synset = splitLine[1];
-            add_nouns(synset, synsetId);
-        }
-    }
-
-    private void add_nouns(String synset, Integer synsetId) {
-        ++num_of_synsets;
-        list_of_synsets.add(synset);
-        String[] list = synset.split(" ");
-        for (String noun : list) {
-            // check repeated nouns, since multiple synsets can have the same noun
-            if (isNoun(noun)) {
-                words.get(noun).add(synsetId);
-            } else {
-                ++num_of_nouns;
-                ArrayList<Integer> newlist = new ArrayList<Integer>();
-                newlist.add(synsetId);
-                words.put(noun, newlist);
-            }
+        WordNetLoader loader = new WordNetLoader(synsets, hypernyms, mapSynsets);
+        current = new Version(loader.graph, loader.synsets, NounIndex.build(loader.words),
+                              new SAP(loader.graph, options));
+        load_bytes = loader.bytes;
+        load_nanos = loader.nanos;
+    }
+
+    private WordNet(WordNetSnapshot.Contents contents, SapOptions options) {
+        current = new Version(contents.graph, contents.synsets, contents.words,
+                              new SAP(contents.graph, options));
+        load_bytes = contents.bytes;
+        load_nanos = contents.nanos;
+    }
+
+    // writes the graph, synsets and noun index to a binary snapshot that open()
+    // loads without re-parsing the text files
+    public void save(Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            Version version = current;
+            WordNetSnapshot.write(path, version.graph, version.list_of_synsets, version.words);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not write " + path, e);
+        }
+    }
+
+    // loads a snapshot written by save(), memory-mapping the file
+    public static WordNet open(Path path) {
+        return open(path, 0);
+    }
+
+    // as above, with an LRU cache of the given capacity in front of SAP
+    public static WordNet open(Path path, int cacheCapacity) {
+        return open(path, new SapOptions().cacheCapacity(cacheCapacity));
+    }
+
+    // as above, with the optional SAP features selected in options
+    public static WordNet open(Path path, SapOptions options) {
+        return open(path, options, false);
+    }
+
+    // as above; with mapSynsets, synset text is read from the mapped snapshot
+    // on use rather than copied to the heap
+    public static WordNet open(Path path, SapOptions options, boolean mapSynsets) {
+        if (path == null || options == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            return new WordNet(WordNetSnapshot.read(path, mapSynsets), options);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + path, e);
         }
     }
 
-    private void init_hypernyms(String hypernyms) {
-        graph = new Digraph(num_of_synsets);
-        In hypernymIn = new In(hypernyms);
-        while (hypernymIn.hasNextLine()) {
-            String line = hypernymIn.readLine();
-            String[] splitLine = line.split(",");
-            Integer synsetId = Integer.parseInt(splitLine[0]);
-            // iterate over synset's hypernyms
-            for (int i = 1; i < splitLine.length; ++i) {
-                Integer hypernym = Integer.parseInt(splitLine[i]);
-                add_hypernym(synsetId, hypernym);
+    // adds synset id, whose synonyms are the given nouns, with no hypernyms yet
+    // ids stay dense, so id must be the number of synsets so far
+    // costs O(V + E) plus rebuilding the noun index; cached results and
+    // ancestor labels of the existing synsets are kept
+    public synchronized void addSynset(int id, String[] nouns) {
+        Version version = current;
+        if (id != version.graph.V()) {
+            throw new IllegalArgumentException("expected synset id " + version.graph.V() + ", got " + id);
+        }
+        if (nouns == null || nouns.length == 0) {
+            throw new IllegalArgumentException("a synset needs at least one noun");
+        }
+        for (String noun : nouns) {
+            if (noun == null || noun.isEmpty() || noun.indexOf(' ') != -1 || noun.indexOf(',') != -1) {
+                throw new IllegalArgumentException("invalid noun: " + noun);
             }
         }
+        CompactDigraph graph = version.graph.with_vertex();
+        SynsetText list_of_synsets = version.list_of_synsets.with(String.join(" ", nouns));
+        // the new synset has no descendants yet, so no existing vertex changes
+        SAP sap = version.sap.updated(graph, new boolean[version.graph.V()]);
+        current = new Version(graph, list_of_synsets, version.words.with(nouns, id), sap);
     }
 
-    private void add_hypernym(Integer synsetId, Integer hypernym) {
-        graph.addEdge(synsetId, hypernym);
-        ++num_of_edges;
+    // makes synset parent a hypernym of synset child
+    // only child and its descendants gain ancestors, so only their cached
+    // results and ancestor labels are invalidated; costs O(V + E) plus
+    // relabelling those descendants
+    public synchronized void addHypernym(int child, int parent) {
+        Version version = current;
+        int V = version.graph.V();
+        if (child < 0 || child >= V || parent < 0 || parent >= V) {
+            throw new IllegalArgumentException("synset id is outside its prescribed range");
+        }
+        CompactDigraph graph = version.graph.with_edge(child, parent);
+        boolean[] changed = new boolean[V];
+        for (int v : graph.descendants(child)) {
+            changed[v] = true;
+        }
+        SAP sap = version.sap.updated(graph, changed);
+        current = new Version(graph, version.list_of_synsets, version.words, sap);
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return words.keySet();
+        return current.words;
     }
 
     // is the word a WordNet noun?
@@ -84,51 +176,275 @@ public class WordNet {
         if (word == null) {
             throw new IllegalArgumentException();
         }
-        return words.containsKey(word);
+        return current.words.find(word) != -1;
     }
 
-    private void validate_nouns(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
+    // position of the noun in the noun index; throws if it is not a noun
+    private static int noun_index(Version version, String noun) {
+        if (noun == null) {
+            throw new IllegalArgumentException();
+        }
+        int index = version.words.find(noun);
+        if (index == -1) {
             throw new IllegalArgumentException("Non nouns detected");
         }
+        return index;
     }
 
-    // friendly reminder that the synsetId of a noun is always an array list
-    // a bit of an overkill, but since our SAP module handles iterables, why not?
-    private ArrayList<Integer> synset_id(String noun) {
-        return words.get(noun);
+    // friendly reminder that a noun can belong to several synsets, so its
+    // synsetIds are always an array
+    private static int[] synset_id(Version version, String noun) {
+        return version.words.synsets(noun_index(version, noun));
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        validate_nouns(nounA, nounB);
-        return sap.length(synset_id(nounA), synset_id(nounB));
+        Version version = current;
+        return version.sap.query_sets(synset_id(version, nounA), synset_id(version, nounB)).length();
+    }
+
+    // estimated distance between nounA and nounB from the SAP landmarks, which
+    // must be enabled in the SapOptions; never below distance(nounA, nounB)
+    public int approximateDistance(String nounA, String nounB) {
+        Version version = current;
+        return version.sap.approximate_sets(synset_id(version, nounA), synset_id(version, nounB));
+    }
+
+    // a shortest ancestral path between nounA and nounB as synset ids: a synset
+    // of nounA, its hypernyms up to the common ancestor, then down to a synset
+    // of nounB; empty if there is no such path
+    public int[] path(String nounA, String nounB) {
+        Version version = current;
+        return version.sap.path_sets(synset_id(version, nounA), synset_id(version, nounB));
+    }
+
+    // the synset (second field of synsets.txt) with the given id
+    public String synset(int id) {
+        SynsetText list_of_synsets = current.list_of_synsets;
+        if (id < 0 || id >= list_of_synsets.size()) {
+            throw new IllegalArgumentException("synset id is outside its prescribed range");
+        }
+        return list_of_synsets.get(id);
+    }
+
+    // the k nouns closest to noun by distance, nearest first, excluding noun
+    // itself; fewer if fewer nouns share an ancestor with it
+    // synsets are visited in order of distance, walking up through hypernyms
+    // and back down through hyponyms, so only the neighbourhood of the noun is
+    // searched rather than the whole vocabulary
+    public List<String> nearest(String noun, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must be non-negative");
+        }
+        Version version = current;
+        int[] ids = synset_id(version, noun);
+        ArrayList<String> result = new ArrayList<String>();
+        if (k == 0) {
+            return result;
+        }
+        HashSet<String> seen = new HashSet<String>();
+        seen.add(noun);
+        version.sap.nearest(ids, (v, d) -> {
+            for (String synonym : version.list_of_synsets.get(v).split(" ")) {
+                if (!synonym.isEmpty() && seen.add(synonym)) {
+                    result.add(synonym);
+                    if (result.size() == k) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        });
+        return result;
+    }
+
+    // ancestors of all synsets of each noun with their distances, for callers
+    // that compare nouns against each other; computed in parallel from one
+    // version, since profiles of different versions cannot be compared
+    SAP.Profile[] profiles(List<String> nouns) {
+        Version version = current;
+        int[][] ids = new int[nouns.size()][];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = synset_id(version, nouns.get(i));
+        }
+        SAP.Profile[] profiles = new SAP.Profile[ids.length];
+        IntStream.range(0, ids.length).parallel().forEach(i -> profiles[i] = version.sap.profile(ids[i]));
+        return profiles;
+    }
+
+    // distances for a batch of noun pairs, each given as {nounA, nounB}
+    // every pair is oriented so that its more frequent noun leads, and SAP
+    // groups pairs by that noun so each shared noun is traversed once per worker
+    public int[] distances(List<String[]> pairs) {
+        if (pairs == null) {
+            throw new IllegalArgumentException();
+        }
+        Version version = current;
+        // position of each noun in the noun index, and how often it occurs
+        int[] a = new int[pairs.size()];
+        int[] b = new int[pairs.size()];
+        HashMap<Integer, Integer> frequency = new HashMap<Integer, Integer>();
+        for (int k = 0; k < pairs.size(); ++k) {
+            String[] pair = pairs.get(k);
+            if (pair == null || pair.length != 2) {
+                throw new IllegalArgumentException("each pair must hold exactly two nouns");
+            }
+            a[k] = noun_index(version, pair[0]);
+            b[k] = noun_index(version, pair[1]);
+            frequency.merge(a[k], 1, Integer::sum);
+            frequency.merge(b[k], 1, Integer::sum);
+        }
+        // share one id array per distinct noun
+        HashMap<Integer, int[]> noun_ids = new HashMap<Integer, int[]>();
+        for (int noun : frequency.keySet()) {
+            noun_ids.put(noun, version.words.synsets(noun));
+        }
+        int[][] v = new int[pairs.size()][];
+        int[][] w = new int[pairs.size()][];
+        int[] v_key = new int[pairs.size()];
+        for (int k = 0; k < pairs.size(); ++k) {
+            boolean swap = frequency.get(b[k]) > frequency.get(a[k]);
+            v_key[k] = swap ? b[k] : a[k];
+            v[k] = noun_ids.get(v_key[k]);
+            w[k] = noun_ids.get(swap ? a[k] : b[k]);
+        }
+        return version.sap.batch_lengths(v, w, v_key);
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA
     // and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        validate_nouns(nounA, nounB);
-        Integer synset_id = sap.ancestor(synset_id(nounA), synset_id(nounB));
-        return list_of_synsets.get(synset_id);
+        Version version = current;
+        SapResult result = version.sap.query_sets(synset_id(version, nounA), synset_id(version, nounB));
+        return version.list_of_synsets.get(result.ancestor());
 
     }
 
+    // distance between nounA and nounB together with their common ancestor and
+    // its synset, computed in a single traversal
+    public SapResult relation(String nounA, String nounB) {
+        Version version = current;
+        SapResult result = version.sap.query_sets(synset_id(version, nounA), synset_id(version, nounB));
+        if (result.ancestor() == -1) {
+            return result;
+        }
+        String synset = version.list_of_synsets.get(result.ancestor());
+        return new SapResult(result.length(), result.ancestor(), synset);
+    }
+
+    // per-query SAP instrumentation, kept across updates; null unless enabled
+    // in the SapOptions
+    public SapStats sapStats() {
+        return current.sap.stats();
+    }
+
     private void debug() {
-        StdOut.println("num of synsets: " + num_of_synsets);
-        StdOut.println("num of nouns: " + num_of_nouns);
-        StdOut.println("num of edges: " + num_of_edges);
+        Version version = current;
+        SAP sap = version.sap;
+        StdOut.println("num of synsets: " + version.graph.V());
+        StdOut.println("num of nouns: " + version.words.size());
+        StdOut.println("num of edges: " + version.graph.E());
+        StdOut.println("synset text: " + version.list_of_synsets);
+        StdOut.printf("loaded %.1f MB in %.1f ms (%.1f MB/s)\n", load_bytes / 1e6, load_nanos / 1e6,
+                      load_bytes / 1e6 / (load_nanos / 1e9));
+        if (sap.cache() != null) {
+            StdOut.println("sap cache: " + sap.cache());
+        }
+        if (sap.labelStats() != null) {
+            StdOut.println("ancestor labels: " + sap.labelStats());
+        }
+        if (sap.landmarkStats() != null) {
+            StdOut.println("landmarks: " + sap.landmarkStats());
+        }
+        if (sap.stats() != null) {
+            StdOut.println("sap stats:\n" + sap.stats());
+        }
+    }
+
+    // stress test: answer the same random noun pairs on 1, 2, 4, ... threads up
+    // to max_threads sharing this WordNet, check every thread count agrees with
+    // the single-threaded answers and report throughput and speedup, flagging
+    // thread counts that fall short of SapStressTest.min_speedup
+    // SapStressTest runs the same test on SAP alone, from a hypernyms file
+    private static void test_concurrent(WordNet wordnet, int max_threads) {
+        final int num_of_queries = 200000;
+        ArrayList<String> nouns = new ArrayList<String>();
+        for (String noun : wordnet.nouns()) {
+            nouns.add(noun);
+        }
+        Random random = new Random(42);
+        String[] nounsA = new String[num_of_queries];
+        String[] nounsB = new String[num_of_queries];
+        for (int i = 0; i < num_of_queries; ++i) {
+            nounsA[i] = nouns.get(random.nextInt(nouns.size()));
+            nounsB[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+        int[] expected = null;
+        double base_throughput = 0;
+        for (int threads = 1; threads <= max_threads; threads *= 2) {
+            int[] results = new int[num_of_queries];
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            // warm up every worker's scratch and the JIT before timing
+            run_queries(wordnet, pool, threads, nounsA, nounsB, results, num_of_queries / 10);
+            long start = System.nanoTime();
+            run_queries(wordnet, pool, threads, nounsA, nounsB, results, num_of_queries);
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+            if (expected == null) {
+                expected = results;
+            } else if (!Arrays.equals(expected, results)) {
+                throw new IllegalStateException("concurrent results differ with " + threads + " threads");
+            }
+            double throughput = num_of_queries / (elapsed / 1e9);
+            if (threads == 1) {
+                base_throughput = throughput;
+            }
+            double speedup = throughput / base_throughput;
+            StdOut.printf("threads: %2d, queries/s: %10.0f, speedup: %5.2f%s\n", threads, throughput, speedup,
+                          speedup >= SapStressTest.min_speedup(threads) ? "" : "  below expected");
+        }
+    }
+
+    private static void run_queries(WordNet wordnet, ExecutorService pool, int threads, String[] nounsA,
+                                    String[] nounsB, int[] results, int count) {
+        ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; ++t) {
+            final int first = t;
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i < count; i += threads) {
+                    results[i] = wordnet.distance(nounsA[i], nounsB[i]);
+                }
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     // do unit testing of this class
+    // an optional third argument runs the concurrent stress test on up to that
+    // many threads
     public static void main(String[] args) {
         WordNet wordnet = new WordNet(args[0], args[1]);
         wordnet.debug();
+        if (args.length > 2) {
+            test_concurrent(wordnet, Integer.parseInt(args[2]));
+            return;
+        }
         StdOut.println(wordnet.distance("AND_circuit", "entity"));
         StdOut.println(wordnet.sap("Adams", "Sam_Adams"));
         StdOut.println(wordnet.sap("Adam", "Robert_Adam"));
         StdOut.println(wordnet.distance("bird", "worm"));
         StdOut.println(wordnet.sap("worm", "bird"));
+        StdOut.println(wordnet.relation("worm", "bird"));
+        StdOut.println(wordnet.nearest("bird", 10));
+        for (int id : wordnet.path("worm", "bird")) {
+            StdOut.println("  " + wordnet.synset(id));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,263 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+// benchmark suite for WordNet construction, SAP single and set queries and
+// Outcast, over the data files in this directory:
+//   construction  synsetsN-subgraph.txt / hypernymsN-subgraph.txt pairs, and
+//                 synsets.txt with hypernyms.txt, hypernyms100K/200K/300K.txt
+//   SAP           the digraph of every hypernyms file
+//   Outcast       every outcast*.txt file whose nouns are all in the largest
+//                 WordNet available
+// inputs that are missing (e.g. synsets.txt, which is not checked in) are
+// skipped with a note
+// every benchmark runs timed warm-up iterations, then measured ones, in the
+// style of JMH, and reports ops/s (mean and standard deviation over the
+// measured iterations) and allocation, in bytes per op and MB/s, summed over
+// all live threads from ThreadMXBean like JMH's -prof gc; results are fed to a
+// sink so the JIT cannot drop the work
+// usage: java WordNetBenchmark [data directory] [name filter] [seconds per iteration]
+public class WordNetBenchmark {
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final int NUM_OF_QUERIES = 4096; // random queries cycled through
+    private static final int[] SUBGRAPH_SIZES = { 100, 500, 1000, 5000, 10000, 50000 };
+    private static final String[] FULL_HYPERNYMS = { "hypernyms.txt", "hypernyms100K.txt", "hypernyms200K.txt",
+                                                     "hypernyms300K.txt" };
+
+    private static volatile int sink;
+
+    private final String dir;
+    private final String filter;
+    private final long iteration_nanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    private WordNetBenchmark(String dir, String filter, double seconds) {
+        this.dir = dir;
+        this.filter = filter;
+        this.iteration_nanos = (long) (seconds * 1e9);
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    // bytes allocated so far by every live thread, which includes the common
+    // pool workers that parallel construction runs on
+    private long allocated() {
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    // runs op for whole iterations of at least iteration_nanos each and prints
+    // one result line
+    private void bench(String name, IntSupplier op) {
+        if (filter != null && !name.contains(filter)) {
+            return;
+        }
+        int result = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+            long start = System.nanoTime();
+            do {
+                result += op.getAsInt();
+            } while (System.nanoTime() - start < iteration_nanos);
+        }
+        double[] ops_per_second = new double[MEASURED_ITERATIONS];
+        long total_ops = 0;
+        long total_bytes = 0;
+        long total_nanos = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+            long ops = 0;
+            long bytes = allocated();
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                result += op.getAsInt();
+                ++ops;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iteration_nanos);
+            total_bytes += allocated() - bytes;
+            total_ops += ops;
+            total_nanos += elapsed;
+            ops_per_second[i] = ops / (elapsed / 1e9);
+        }
+        sink += result;
+        double mean = Arrays.stream(ops_per_second).average().orElse(0);
+        double variance = Arrays.stream(ops_per_second).map(x -> (x - mean) * (x - mean)).sum()
+            / Math.max(1, MEASURED_ITERATIONS - 1);
+        StdOut.printf("%-48s %14.1f +- %10.1f ops/s %14.1f B/op %10.1f MB/s\n", name, mean, Math.sqrt(variance),
+                      (double) total_bytes / total_ops, total_bytes / 1e6 / (total_nanos / 1e9));
+    }
+
+    private File file(String name) {
+        return new File(dir, name);
+    }
+
+    private void bench_construction() {
+        for (int size : SUBGRAPH_SIZES) {
+            bench_construction(file("synsets" + size + "-subgraph.txt"),
+                               file("hypernyms" + size + "-subgraph.txt"));
+        }
+        for (String hypernyms : FULL_HYPERNYMS) {
+            bench_construction(file("synsets.txt"), file(hypernyms));
+        }
+    }
+
+    private void bench_construction(File synsets, File hypernyms) {
+        String name = "construct " + hypernyms.getName();
+        if (!synsets.exists() || !hypernyms.exists()) {
+            File missing = synsets.exists() ? hypernyms : synsets;
+            StdOut.println(name + ": skipped, " + missing.getName() + " is missing");
+            return;
+        }
+        bench(name, () -> new WordNet(synsets.getPath(), hypernyms.getPath()).isNoun("entity") ? 1 : 0);
+    }
+
+    private void bench_sap() {
+        for (int size : SUBGRAPH_SIZES) {
+            bench_sap(file("hypernyms" + size + "-subgraph.txt"), false);
+        }
+        for (String hypernyms : FULL_HYPERNYMS) {
+            bench_sap(file(hypernyms), true);
+        }
+    }
+
+    // single-pair queries on every graph; ancestor, set and label queries too
+    // on the full-size ones
+    private void bench_sap(File hypernyms, boolean full) {
+        if (!hypernyms.exists()) {
+            StdOut.println("sap " + hypernyms.getName() + ": skipped, the file is missing");
+            return;
+        }
+        CompactDigraph graph = WordNetLoader.read_hypernyms(hypernyms.getPath());
+        Random random = new Random(42);
+        int[] v = new int[NUM_OF_QUERIES];
+        int[] w = new int[NUM_OF_QUERIES];
+        List<List<Integer>> v_sets = new ArrayList<List<Integer>>();
+        List<List<Integer>> w_sets = new ArrayList<List<Integer>>();
+        for (int i = 0; i < NUM_OF_QUERIES; ++i) {
+            v[i] = random.nextInt(graph.V());
+            w[i] = random.nextInt(graph.V());
+            v_sets.add(random_set(random, graph.V()));
+            w_sets.add(random_set(random, graph.V()));
+        }
+        String name = hypernyms.getName();
+        SAP sap = new SAP(graph);
+        int[] next = new int[1];
+        bench("sap length " + name, () -> {
+            int i = next[0]++ & (NUM_OF_QUERIES - 1);
+            return sap.length(v[i], w[i]);
+        });
+        if (!full) {
+            return;
+        }
+        bench("sap ancestor " + name, () -> {
+            int i = next[0]++ & (NUM_OF_QUERIES - 1);
+            return sap.ancestor(v[i], w[i]);
+        });
+        bench("sap set length " + name, () -> {
+            int i = next[0]++ & (NUM_OF_QUERIES - 1);
+            return sap.length(v_sets.get(i), w_sets.get(i));
+        });
+        SAP labelled = new SAP(graph, new SapOptions().labels(true));
+        bench("sap labels length " + name, () -> {
+            int i = next[0]++ & (NUM_OF_QUERIES - 1);
+            return labelled.length(v[i], w[i]);
+        });
+        SAP renumbered = new SAP(graph, new SapOptions().renumber(true));
+        String renumbered_name = "sap renumbered length " + name;
+        bench(renumbered_name, () -> {
+            int i = next[0]++ & (NUM_OF_QUERIES - 1);
+            return renumbered.length(v[i], w[i]);
+        });
+        if (filter == null || renumbered_name.contains(filter)) {
+            print_locality(name, graph);
+        }
+    }
+
+    // there are no hardware counters to read from Java, so cache behaviour is
+    // shown through the mean id gap between a synset and its hypernyms, i.e.
+    // how far apart the scratch and adjacency entries touched by one BFS step
+    // are, before and after renumbering
+    private static void print_locality(String name, CompactDigraph graph) {
+        int[] order = graph.top_down_order();
+        int[] rank = new int[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            rank[order[i]] = i;
+        }
+        StdOut.printf("%-48s mean hypernym id gap %.0f, renumbered %.0f\n", "locality " + name,
+                      mean_gap(graph), mean_gap(graph.renumbered(rank)));
+    }
+
+    private static double mean_gap(CompactDigraph graph) {
+        long total = 0;
+        for (int v = 0; v < graph.V(); ++v) {
+            for (int e = graph.offsets()[v]; e < graph.offsets()[v + 1]; ++e) {
+                total += Math.abs(graph.targets()[e] - v);
+            }
+        }
+        return (double) total / Math.max(1, graph.E());
+    }
+
+    private static List<Integer> random_set(Random random, int V) {
+        List<Integer> set = new ArrayList<Integer>();
+        for (int k = 3 + random.nextInt(3); k > 0; --k) {
+            set.add(random.nextInt(V));
+        }
+        return set;
+    }
+
+    // over the full WordNet if synsets.txt is present, else the largest
+    // subgraph, skipping outcast files with nouns it does not have
+    private void bench_outcast() {
+        File synsets = file("synsets.txt");
+        File hypernyms = file("hypernyms.txt");
+        for (int k = SUBGRAPH_SIZES.length - 1; k >= 0 && !(synsets.exists() && hypernyms.exists()); --k) {
+            synsets = file("synsets" + SUBGRAPH_SIZES[k] + "-subgraph.txt");
+            hypernyms = file("hypernyms" + SUBGRAPH_SIZES[k] + "-subgraph.txt");
+        }
+        if (!synsets.exists() || !hypernyms.exists()) {
+            StdOut.println("outcast: skipped, no synsets file");
+            return;
+        }
+        WordNet wordnet = new WordNet(synsets.getPath(), hypernyms.getPath());
+        Outcast outcast = new Outcast(wordnet);
+        File[] files = new File(dir).listFiles((d, name) -> name.startsWith("outcast") && name.endsWith(".txt"));
+        Arrays.sort(files);
+        for (File file : files) {
+            String[] nouns = new In(file).readAllStrings();
+            String missing = null;
+            for (String noun : nouns) {
+                if (!wordnet.isNoun(noun)) {
+                    missing = noun;
+                    break;
+                }
+            }
+            if (missing != null) {
+                StdOut.println("outcast " + file.getName() + ": skipped, " + missing + " is not in "
+                               + synsets.getName());
+                continue;
+            }
+            bench("outcast " + file.getName(), () -> outcast.outcast(nouns).length());
+        }
+    }
+
+    public static void main(String[] args) {
+        String dir = args.length > 0 ? args[0] : ".";
+        String filter = args.length > 1 ? args[1] : null;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        WordNetBenchmark benchmark = new WordNetBenchmark(dir, filter, seconds);
+        benchmark.bench_construction();
+        benchmark.bench_sap();
+        benchmark.bench_outcast();
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+// closed-loop load generator for WordNetServer: each connection sends one
+// request, waits for its answer and sends the next, so latency is measured per
+// request; the mix is 90% distance, 9% sap and 1% outcast over random nouns
+// from the synsets file
+public class WordNetLoadGenerator {
+    // nouns of every synset in the file, as a flat list
+    private static String[] read_nouns(String synsets) {
+        ArrayList<String> nouns = new ArrayList<String>();
+        In in = new In(synsets);
+        while (in.hasNextLine()) {
+            String[] fields = in.readLine().split(",");
+            if (fields.length > 1) {
+                nouns.addAll(Arrays.asList(fields[1].split(" ")));
+            }
+        }
+        return nouns.toArray(new String[0]);
+    }
+
+    private static String request(String[] nouns, Random random) {
+        int kind = random.nextInt(100);
+        if (kind < 90) {
+            return "distance " + nouns[random.nextInt(nouns.length)] + " " + nouns[random.nextInt(nouns.length)];
+        }
+        if (kind < 99) {
+            return "sap " + nouns[random.nextInt(nouns.length)] + " " + nouns[random.nextInt(nouns.length)];
+        }
+        StringBuilder outcast = new StringBuilder("outcast");
+        for (int i = 0; i < 8; ++i) {
+            outcast.append(' ').append(nouns[random.nextInt(nouns.length)]);
+        }
+        return outcast.toString();
+    }
+
+    // sends count requests on one connection and returns their latencies in
+    // nanoseconds
+    private static long[] run_connection(int port, String[] nouns, int count, long seed) throws IOException {
+        long[] latencies = new long[count];
+        Random random = new Random(seed);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            for (int i = 0; i < count; ++i) {
+                String line = request(nouns, random);
+                long start = System.nanoTime();
+                out.write(line);
+                out.write('\n');
+                out.flush();
+                String response = in.readLine();
+                latencies[i] = System.nanoTime() - start;
+                if (response == null) {
+                    throw new IOException("server closed the connection");
+                }
+                if (response.startsWith("error")) {
+                    throw new IOException(line + ": " + response);
+                }
+            }
+        }
+        return latencies;
+    }
+
+    private static String server_stats(int port) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            out.write("stats\n");
+            out.flush();
+            return in.readLine();
+        }
+    }
+
+    // arguments: synsets file, server port, number of connections and
+    // requests per connection
+    public static void main(String[] args) throws IOException {
+        String[] nouns = read_nouns(args[0]);
+        int port = Integer.parseInt(args[1]);
+        int connections = Integer.parseInt(args[2]);
+        int requests = Integer.parseInt(args[3]);
+        // a short warm-up for the server's JIT and per-thread scratch
+        run_connection(port, nouns, Math.min(requests, 2000), -1);
+        ExecutorService pool = WordNetServer.new_executor();
+        ArrayList<Future<long[]>> tasks = new ArrayList<Future<long[]>>();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; ++c) {
+            final long seed = c;
+            tasks.add(pool.submit(() -> run_connection(port, nouns, requests, seed)));
+        }
+        long[] latencies = new long[connections * requests];
+        try {
+            for (int c = 0; c < connections; ++c) {
+                System.arraycopy(tasks.get(c).get(), 0, latencies, c * requests, requests);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        Arrays.sort(latencies);
+        StdOut.printf("%d connections, %d requests, %.0f requests/s\n", connections, latencies.length,
+                      latencies.length / (elapsed / 1e9));
+        StdOut.printf("latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us\n",
+                      percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                      percentile(latencies, 0.999) / 1e3, latencies[latencies.length - 1] / 1e3);
+        StdOut.println("server: " + server_stats(port));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// parallel parser for synsets.txt and hypernyms.txt
+// each file is read whole into a byte array and cut into line-aligned chunks,
+// which are parsed concurrently with hand-written ASCII scanners (no regex, no
+// String.split, no boxed parsing); per-chunk results are merged in file order,
+// so the outcome is identical to parsing line by line
+// with map_synsets, the synset strings are not kept: synsets.txt is
+// memory-mapped once parsed and each synset is addressed by the byte range of
+// its field
+class WordNetLoader {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    final SynsetText synsets;
+    final HashMap<String, ArrayList<Integer>> words;
+    final CompactDigraph graph;
+    final long bytes; // total size of both files
+    final long nanos; // wall time of the whole load
+
+    WordNetLoader(String synsets_file, String hypernyms_file) {
+        this(synsets_file, hypernyms_file, false);
+    }
+
+    WordNetLoader(String synsets_file, String hypernyms_file, boolean map_synsets) {
+        long start = System.nanoTime();
+        byte[] synset_data = read(synsets_file);
+        byte[] hypernym_data = read(hypernyms_file);
+        SynsetChunk[] synset_chunks = parse(synset_data, SynsetChunk::new, SynsetChunk[]::new);
+        int num_of_synsets = 0;
+        for (SynsetChunk chunk : synset_chunks) {
+            num_of_synsets += chunk.count;
+        }
+        ArrayList<String> strings = null;
+        if (!map_synsets) {
+            strings = new ArrayList<String>(Arrays.asList(new String[num_of_synsets]));
+        }
+        int[] starts = new int[num_of_synsets];
+        int[] ends = new int[num_of_synsets];
+        Arrays.fill(starts, -1);
+        words = new HashMap<String, ArrayList<Integer>>();
+        for (SynsetChunk chunk : synset_chunks) {
+            for (int i = 0; i < chunk.count; ++i) {
+                int id = chunk.ids[i];
+                if (id < 0 || id >= num_of_synsets || starts[id] != -1) {
+                    throw new IllegalArgumentException("synset ids must be distinct and between 0 and "
+                                                       + (num_of_synsets - 1) + ", got " + id);
+                }
+                starts[id] = chunk.starts[i];
+                ends[id] = chunk.ends[i];
+                if (strings != null) {
+                    strings.set(id, chunk.synsets[i]);
+                }
+            }
+            for (Map.Entry<String, ArrayList<Integer>> entry : chunk.words.entrySet()) {
+                ArrayList<Integer> ids = words.get(entry.getKey());
+                if (ids == null) {
+                    words.put(entry.getKey(), entry.getValue());
+                } else {
+                    ids.addAll(entry.getValue());
+                }
+            }
+        }
+        synsets = map_synsets ? SynsetText.mapped(map(synsets_file), starts, ends) : SynsetText.on_heap(strings);
+        graph = hypernym_graph(parse(hypernym_data, HypernymChunk::new, HypernymChunk[]::new), num_of_synsets);
+        bytes = synset_data.length + hypernym_data.length;
+        nanos = System.nanoTime() - start;
+    }
+
+    // the digraph of a hypernyms file on its own, with a vertex for every id
+    // up to the largest one in the file, for tools that have no synsets file
+    static CompactDigraph read_hypernyms(String hypernyms_file) {
+        HypernymChunk[] chunks = parse(read(hypernyms_file), HypernymChunk::new, HypernymChunk[]::new);
+        int num_of_vertices = 0;
+        for (HypernymChunk chunk : chunks) {
+            num_of_vertices = Math.max(num_of_vertices, chunk.max_id + 1);
+        }
+        return hypernym_graph(chunks, num_of_vertices);
+    }
+
+    private static CompactDigraph hypernym_graph(HypernymChunk[] chunks, int num_of_vertices) {
+        int num_of_edges = 0;
+        for (HypernymChunk chunk : chunks) {
+            num_of_edges += chunk.count;
+        }
+        int[] from = new int[num_of_edges];
+        int[] to = new int[num_of_edges];
+        int e = 0;
+        for (HypernymChunk chunk : chunks) {
+            System.arraycopy(chunk.from, 0, from, e, chunk.count);
+            System.arraycopy(chunk.to, 0, to, e, chunk.count);
+            e += chunk.count;
+        }
+        return new CompactDigraph(num_of_vertices, from, to, num_of_edges);
+    }
+
+    private static byte[] read(String file) {
+        try {
+            return Files.readAllBytes(Paths.get(file));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read " + file, e);
+        }
+    }
+
+    private static MappedByteBuffer map(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not map " + file, e);
+        }
+    }
+
+    // parses line-aligned chunks of data in parallel, one chunk object each
+    private static <T extends Chunk> T[] parse(byte[] data, Supplier<T> factory, IntFunction<T[]> array) {
+        int[] bounds = chunk_bounds(data, CHUNKS_PER_THREAD * Runtime.getRuntime().availableProcessors());
+        T[] chunks = array.apply(bounds.length - 1);
+        IntStream.range(0, chunks.length).parallel().forEach(c -> {
+            T chunk = factory.get();
+            Cursor cursor = new Cursor(data, bounds[c], bounds[c + 1]);
+            while (cursor.next_line()) {
+                chunk.parse_line(cursor);
+            }
+            chunks[c] = chunk;
+        });
+        return chunks;
+    }
+
+    // start offsets of up to n chunks of roughly equal size, each moved forward
+    // to the start of a line, followed by data.length
+    private static int[] chunk_bounds(byte[] data, int n) {
+        int[] bounds = new int[n + 1];
+        int count = 1;
+        for (int c = 1; c < n; ++c) {
+            int pos = Math.max((int) ((long) data.length * c / n), bounds[count - 1] + 1);
+            while (pos < data.length && data[pos - 1] != '\n') {
+                ++pos;
+            }
+            if (pos > bounds[count - 1] && pos < data.length) {
+                bounds[count++] = pos;
+            }
+        }
+        bounds[count++] = data.length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    // scans the comma-separated fields of one line at a time in [pos, end)
+    private static class Cursor {
+        private final byte[] data;
+        private final int end;
+        private int pos;
+        private int line_end;
+        private int field_start; // byte range of the last string field read
+        private int field_end;
+
+        public Cursor(byte[] data, int start, int end) {
+            this.data = data;
+            this.pos = start;
+            this.end = end;
+            this.line_end = start;
+        }
+
+        // moves to the next non-blank line; false at the end of the chunk
+        public boolean next_line() {
+            pos = line_end;
+            while (pos < end && (data[pos] == '\n' || data[pos] == '\r')) {
+                ++pos;
+            }
+            if (pos >= end) {
+                return false;
+            }
+            line_end = pos;
+            while (line_end < end && data[line_end] != '\n' && data[line_end] != '\r') {
+                ++line_end;
+            }
+            return true;
+        }
+
+        public boolean has_field() {
+            return pos < line_end;
+        }
+
+        // the next field as a non-negative decimal int
+        public int next_int() {
+            int start = pos;
+            int value = 0;
+            while (pos < line_end && data[pos] != ',') {
+                int digit = data[pos++] - '0';
+                if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                    throw new IllegalArgumentException("malformed integer field at byte " + start);
+                }
+                value = 10 * value + digit;
+            }
+            if (pos == start) {
+                throw new IllegalArgumentException("missing integer field at byte " + start);
+            }
+            skip_comma();
+            return value;
+        }
+
+        // the next field as a string
+        public String next_string() {
+            field_start = pos;
+            while (pos < line_end && data[pos] != ',') {
+                ++pos;
+            }
+            field_end = pos;
+            String field = new String(data, field_start, field_end - field_start, StandardCharsets.UTF_8);
+            skip_comma();
+            return field;
+        }
+
+        public int field_start() {
+            return field_start;
+        }
+
+        public int field_end() {
+            return field_end;
+        }
+
+        private void skip_comma() {
+            if (pos < line_end) {
+                ++pos;
+            }
+        }
+    }
+
+    private abstract static class Chunk {
+        protected int count;
+
+        abstract void parse_line(Cursor cursor);
+    }
+
+    // "id,noun1 noun2 ...,gloss" lines
+    private static class SynsetChunk extends Chunk {
+        private int[] ids = new int[64];
+        private String[] synsets = new String[64];
+        private int[] starts = new int[64]; // byte range of each synset field in the file
+        private int[] ends = new int[64];
+        private final HashMap<String, ArrayList<Integer>> words = new HashMap<String, ArrayList<Integer>>();
+
+        void parse_line(Cursor cursor) {
+            int id = cursor.next_int();
+            String synset = cursor.next_string();
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * count);
+                synsets = Arrays.copyOf(synsets, 2 * count);
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+            }
+            ids[count] = id;
+            synsets[count] = synset;
+            starts[count] = cursor.field_start();
+            ends[count] = cursor.field_end();
+            ++count;
+            // nouns are separated by single spaces
+            int start = 0;
+            while (start < synset.length()) {
+                int space = synset.indexOf(' ', start);
+                int stop = space == -1 ? synset.length() : space;
+                if (stop > start) {
+                    words.computeIfAbsent(synset.substring(start, stop), k -> new ArrayList<Integer>()).add(id);
+                }
+                start = stop + 1;
+            }
+        }
+    }
+
+    // "id,hypernym1,hypernym2,..." lines
+    private static class HypernymChunk extends Chunk {
+        private int[] from = new int[64];
+        private int[] to = new int[64];
+        private int max_id = -1;
+
+        void parse_line(Cursor cursor) {
+            int id = cursor.next_int();
+            max_id = Math.max(max_id, id);
+            while (cursor.has_field()) {
+                int hypernym = cursor.next_int();
+                max_id = Math.max(max_id, hypernym);
+                if (count == from.length) {
+                    from = Arrays.copyOf(from, 2 * count);
+                    to = Arrays.copyOf(to, 2 * count);
+                }
+                from[count] = id;
+                to[count] = hypernym;
+                ++count;
+            }
+        }
+    }
+}
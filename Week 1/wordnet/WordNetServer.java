@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// serves one shared WordNet to local clients over a line protocol, one request
+// and one response per line:
+//   distance nounA nounB     ->  the distance
+//   sap nounA nounB          ->  the synset of the common ancestor
+//   outcast noun1 noun2 ...  ->  the outcast
+//   stats                    ->  micro-batching counters
+// a failed request is answered with "error <message>"
+// each connection is served on its own virtual thread when the JDK has them
+// (21+) and on a cached platform thread pool otherwise; distance requests from
+// all connections are queued and answered in micro-batches through
+// WordNet.distances, so concurrent clients share the batch query path
+// sap and outcast requests are searched on a fixed pool of platform threads
+// rather than on the connection's thread: SAP keeps an O(V) scratch per
+// thread, which a new thread per connection would allocate afresh every time
+public class WordNetServer {
+    private static final int MAX_BATCH = 1024;
+
+    private final WordNet wordnet;
+    private final Outcast outcast;
+    private final long window_nanos; // how long a batch waits for more requests
+    private final ExecutorService searches; // runs sap and outcast requests
+    private final LinkedBlockingQueue<PendingDistance> pending = new LinkedBlockingQueue<PendingDistance>();
+    private long num_of_batches;
+    private long num_of_batched;
+
+    // a distance request waiting for its batch
+    private static class PendingDistance {
+        private final String[] pair;
+        private final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+        private PendingDistance(String nounA, String nounB) {
+            pair = new String[] { nounA, nounB };
+        }
+    }
+
+    public WordNetServer(WordNet wordnet, long window_micros) {
+        if (wordnet == null || window_micros < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.wordnet = wordnet;
+        this.outcast = new Outcast(wordnet);
+        this.window_nanos = TimeUnit.MICROSECONDS.toNanos(window_micros);
+        this.searches = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "wordnet-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // an executor that runs each task on a new virtual thread, found by
+    // reflection so this compiles and runs on JDKs before 21, where it falls
+    // back to a cached pool of platform threads
+    static ExecutorService new_executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // accepts connections on the loopback interface until the process exits
+    public void serve(int port) throws IOException {
+        ExecutorService connections = new_executor();
+        Thread batcher = new Thread(this::run_batches, "wordnet-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+        try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            StdOut.println("listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                connections.submit(() -> handle(socket));
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                                                                          StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(),
+                                                                    StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(answer(line));
+                out.write('\n');
+                // only flush once the client has no more pipelined requests
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        }
+    }
+
+    // the response line for one request line
+    String answer(String line) {
+        String[] fields = line.trim().split("\\s+");
+        try {
+            switch (fields[0]) {
+                case "distance":
+                    expect_nouns(fields, 2);
+                    return Integer.toString(distance(fields[1], fields[2]));
+                case "sap":
+                    expect_nouns(fields, 2);
+                    return search(() -> wordnet.sap(fields[1], fields[2]));
+                case "outcast":
+                    if (fields.length < 2) {
+                        throw new IllegalArgumentException("outcast needs at least one noun");
+                    }
+                    String[] nouns = Arrays.copyOfRange(fields, 1, fields.length);
+                    return search(() -> outcast.outcast(nouns));
+                case "stats":
+                    return stats();
+                default:
+                    throw new IllegalArgumentException("unknown request " + fields[0]);
+            }
+        } catch (RuntimeException e) {
+            // anything else, e.g. a pair of nouns without a common ancestor,
+            // is answered too rather than dropping the connection
+            return "error " + (e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    // runs the request on the search pool and waits for its answer
+    private String search(Callable<String> request) {
+        try {
+            return searches.submit(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void expect_nouns(String[] fields, int count) {
+        if (fields.length != count + 1) {
+            throw new IllegalArgumentException(fields[0] + " needs " + count + " nouns");
+        }
+    }
+
+    // queues the pair for the next batch and waits for its distance; the
+    // nouns are checked first so that one bad pair cannot fail a whole batch
+    private int distance(String nounA, String nounB) {
+        if (!wordnet.isNoun(nounA) || !wordnet.isNoun(nounB)) {
+            throw new IllegalArgumentException("Non nouns detected");
+        }
+        PendingDistance request = new PendingDistance(nounA, nounB);
+        pending.add(request);
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // takes the first waiting request, collects whatever else arrives within
+    // the window (up to MAX_BATCH) and answers them all with one batch query
+    private void run_batches() {
+        ArrayList<PendingDistance> batch = new ArrayList<PendingDistance>();
+        ArrayList<String[]> pairs = new ArrayList<String[]>();
+        while (true) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + window_nanos;
+                while (batch.size() < MAX_BATCH) {
+                    PendingDistance next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    pending.drainTo(batch, MAX_BATCH - batch.size());
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (PendingDistance request : batch) {
+                pairs.add(request.pair);
+            }
+            try {
+                int[] distances = wordnet.distances(pairs);
+                for (int k = 0; k < batch.size(); ++k) {
+                    batch.get(k).result.complete(distances[k]);
+                }
+            } catch (RuntimeException e) {
+                for (PendingDistance request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            synchronized (this) {
+                ++num_of_batches;
+                num_of_batched += batch.size();
+            }
+            batch.clear();
+            pairs.clear();
+        }
+    }
+
+    private synchronized String stats() {
+        return String.format("batches %d, average batch size %.1f", num_of_batches,
+                             num_of_batches == 0 ? 0 : (double) num_of_batched / num_of_batches);
+    }
+
+    // arguments: synsets file, hypernyms file, port, and optionally the batch
+    // window in microseconds (default 200)
+    public static void main(String[] args) throws IOException {
+        WordNet wordnet = new WordNet(args[0], args[1], new SapOptions().instrument(true));
+        wordnet.sapStats().register("server");
+        long window_micros = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        new WordNetServer(wordnet, window_micros).serve(Integer.parseInt(args[2]));
+    }
+}
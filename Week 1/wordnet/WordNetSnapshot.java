@@ -0,0 +1,137 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+// binary snapshot of a loaded WordNet: hypernym graph, synset strings and noun
+// index in one file
+// layout (big-endian ints):
+//   magic, version, V, E, number of nouns
+//   graph offsets [V + 1], graph targets [E]
+//   synset byte offsets [V + 1], synset UTF-8 bytes
+//   noun byte offsets [nouns + 1], noun UTF-8 bytes (nouns sorted)
+//   posting offsets [nouns + 1], postings (synset ids of each noun)
+// every section is a flat array, and the noun sections are exactly the arrays
+// of a NounIndex, so opening maps the file and bulk-copies each array instead
+// of parsing records
+// with map_synsets, the synset bytes are not copied out of the mapping: the
+// synsets are addressed in place through their byte offsets
+class WordNetSnapshot {
+    private static final int MAGIC = 0x574e5331; // "WNS1"
+    private static final int VERSION = 1;
+
+    // the sections of a snapshot, as loaded
+    static class Contents {
+        CompactDigraph graph;
+        SynsetText synsets;
+        NounIndex words;
+        long bytes; // snapshot file size
+        long nanos; // time spent opening it
+    }
+
+    static void write(Path path, CompactDigraph graph, SynsetText synsets, NounIndex words)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(graph.V());
+            out.writeInt(graph.E());
+            out.writeInt(words.size());
+            write_ints(out, graph.offsets());
+            write_ints(out, graph.targets());
+            write_strings(out, synsets);
+            write_ints(out, words.noun_offsets());
+            out.write(words.noun_bytes());
+            write_ints(out, words.posting_offsets());
+            write_ints(out, words.postings());
+        }
+    }
+
+    private static void write_ints(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    // byte offsets of every string followed by their concatenated UTF-8 bytes
+    private static void write_strings(DataOutputStream out, SynsetText strings) throws IOException {
+        byte[][] encoded = new byte[strings.size()][];
+        int offset = 0;
+        out.writeInt(offset);
+        for (int i = 0; i < encoded.length; ++i) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+            out.writeInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    static Contents read(Path path, boolean map_synsets) throws IOException {
+        long start = System.nanoTime();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException(path + " is not a WordNet snapshot");
+        }
+        int V = buffer.getInt();
+        int E = buffer.getInt();
+        int num_of_nouns = buffer.getInt();
+        Contents contents = new Contents();
+        int[] offsets = read_ints(buffer, V + 1);
+        int[] targets = read_ints(buffer, E);
+        contents.graph = new CompactDigraph(offsets, targets);
+        contents.synsets = map_synsets ? map_strings(buffer, V) : read_strings(buffer, V);
+        int[] noun_offsets = read_ints(buffer, num_of_nouns + 1);
+        byte[] noun_bytes = new byte[noun_offsets[num_of_nouns]];
+        buffer.get(noun_bytes);
+        int[] posting_offsets = read_ints(buffer, num_of_nouns + 1);
+        int[] postings = read_ints(buffer, posting_offsets[num_of_nouns]);
+        contents.words = new NounIndex(noun_bytes, noun_offsets, posting_offsets, postings);
+        contents.bytes = buffer.capacity();
+        contents.nanos = System.nanoTime() - start;
+        return contents;
+    }
+
+    private static int[] read_ints(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static SynsetText read_strings(ByteBuffer buffer, int count) {
+        int[] offsets = read_ints(buffer, count + 1);
+        byte[] bytes = new byte[offsets[count]];
+        buffer.get(bytes);
+        ArrayList<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i) {
+            strings.add(new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+        }
+        return SynsetText.on_heap(strings);
+    }
+
+    // the strings left in the mapping, their offsets moved to file positions
+    private static SynsetText map_strings(ByteBuffer buffer, int count) {
+        int[] offsets = read_ints(buffer, count + 1);
+        int base = buffer.position();
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        for (int i = 0; i < count; ++i) {
+            starts[i] = base + offsets[i];
+            ends[i] = base + offsets[i + 1];
+        }
+        buffer.position(base + offsets[count]);
+        return SynsetText.mapped(buffer, starts, ends);
+    }
+}